@@ -0,0 +1,84 @@
+#!/bin/bash
+
+# Solves the same corpus of scrambles with the JVM build and with the native executable (run it from src/,
+# after ./native_image.sh) and checks that every solution is identical. The search is deterministic,
+# so any difference means the image was built with different tables than the JVM generates.
+# Also prints the average time and the peak RSS of each side.
+#
+# Unverified: GraalVM was not available when this was written, so it has only been run with a JVM launcher
+# standing in for the native executable. The native/JVM equivalence itself has not been shown yet.
+#
+# Usage: ./native_equivalence.sh [build dir] [scrambles] [executable]
+#        (default ../build, 50 scrambles, ../build/rubikscube-solver)
+
+build=${1:-../build}
+count=${2:-50}
+native=${3:-$build/rubikscube-solver}
+
+if [ ! -x "$native" ]; then
+    echo "No native executable at $native, run ./native_image.sh first"
+    exit 1
+fi
+
+mkdir -p "$build/plain" "$build/equivalence"
+javac -d "$build/plain" rubikscube/*.java
+java -cp "$build/plain" rubikscube.Benchmark corpus "$build/corpus" "$count"
+
+jvm_time=0
+native_time=0
+jvm_rss=0
+native_rss=0
+failed=0
+runs=0
+
+# Wall time in ns and peak RSS in KB of one run, using GNU time if it is installed
+measure() {
+    local start_time=$(date +%s%N)
+    if [ -x /usr/bin/time ]; then
+        rss=$(/usr/bin/time -f %M "$@" 2>&1 >/dev/null | tail -1)
+    else
+        "$@" > /dev/null
+        rss=0
+    fi
+    elapsed=$(($(date +%s%N) - start_time))
+}
+
+for file in "$build"/corpus/scramble*.txt; do
+    [ -e "$file" ] || continue
+    filename=$(basename "$file" .txt)
+    jvm_out="$build/equivalence/$filename.jvm.txt"
+    native_out="$build/equivalence/$filename.native.txt"
+
+    measure java -Drubikscube.tableCache=off -cp "$build/plain" rubikscube.Solver "$file" "$jvm_out"
+    jvm_time=$((jvm_time + elapsed))
+    [ "$rss" -gt "$jvm_rss" ] && jvm_rss=$rss
+
+    measure "$native" "$file" "$native_out"
+    native_time=$((native_time + elapsed))
+    [ "$rss" -gt "$native_rss" ] && native_rss=$rss
+
+    if ! cmp -s "$jvm_out" "$native_out"; then
+        echo -e "\033[0;31m$filename: solutions differ\033[0m"
+        failed=$((failed + 1))
+    fi
+    runs=$((runs + 1))
+done
+
+# The corpus directory may hold fewer (or, from an earlier run, more) files than were asked for
+if [ $runs -eq 0 ]; then
+    echo "No scrambles in $build/corpus"
+    exit 1
+fi
+
+if [ -x /usr/bin/time ]; then
+    echo "JVM:    $((jvm_time / runs / 1000000)) ms per run, peak RSS $((jvm_rss / 1024)) MB"
+    echo "native: $((native_time / runs / 1000000)) ms per run, peak RSS $((native_rss / 1024)) MB"
+else
+    echo "JVM:    $((jvm_time / runs / 1000000)) ms per run"
+    echo "native: $((native_time / runs / 1000000)) ms per run"
+fi
+if [ $failed -ne 0 ]; then
+    echo -e "\033[0;31m$failed of $runs solutions differ\033[0m"
+    exit 1
+fi
+echo -e "\033[1;33mAll $runs solutions identical.\033[0m"
@@ -0,0 +1,39 @@
+#!/bin/bash
+
+# Builds a GraalVM native executable of rubikscube.Solver (run it from src/, needs native-image on the PATH).
+# CoordCube, the move cubes in CubieCube and everything their static init touches are initialized at
+# image build time, so the finished tables are part of the image heap. A run starts solving right away,
+# there is nothing to load or generate and no JIT warm up.
+#
+# The table settings (-Drubikscube.packedPruning, phase1Table, tableBackend) are read during that static init,
+# so they are fixed when the image is built. The build always uses the heap backend and no cache file.
+#
+# Usage: ./native_image.sh [build dir]     (default ../build)
+# Then:  ../build/rubikscube-solver input_file output_file
+# Check it against the JVM build with ./native_equivalence.sh
+#
+# Unverified: GraalVM was not available when this was written, so this script has never been run and the
+# native executable has not been checked against the JVM build yet (see native_equivalence.sh).
+
+set -e
+
+if ! command -v native-image > /dev/null; then
+    echo "native-image is not on the PATH, install GraalVM first"
+    exit 1
+fi
+
+build=${1:-../build}
+rm -rf "$build/native-classes"
+mkdir -p "$build/native-classes"
+
+echo -e "\033[0;36mCompiling\033[0m"
+javac -d "$build/native-classes" rubikscube/*.java
+
+echo -e "\033[0;36mBuilding native image\033[0m"
+native-image -cp "$build/native-classes" \
+    -Drubikscube.tableCache=off -Drubikscube.tableBackend=heap \
+    --initialize-at-build-time=rubikscube.CoordCube,rubikscube.Table,rubikscube.TableStore,rubikscube.PruningTableBuilder,rubikscube.CubieCube,rubikscube.Corner,rubikscube.Edge \
+    --no-fallback -O2 \
+    -o "$build/rubikscube-solver" rubikscube.Solver
+
+echo -e "\033[1;33mDone: $build/rubikscube-solver input_file output_file\033[0m"
@@ -0,0 +1,48 @@
+#!/bin/bash
+
+# Packages the solver for the fastest possible startup (run it from src/):
+#   1. compiles the classes and packages the pregenerated tables into rubikscube.jar (see TableGenerator)
+#   2. jlink: a trimmed runtime image that only contains java.base
+#   3. AppCDS: a training solve records every class the solver loads into an archive that the JVM
+#      just maps at startup instead of loading, verifying and linking the classes again
+#
+# JDK 17 can only archive heap objects of JDK classes, not our own static arrays, so the CoordCube
+# tables still come out of the jar resources at class init. That is one bulk read of a few MB.
+#
+# Usage: ./package_runtime.sh [build dir]     (default ../build)
+# Then:  ../build/solve input_file output_file     (extra JVM options can go in JAVA_OPTS)
+
+set -e
+
+build=${1:-../build}
+rm -rf "$build"
+mkdir -p "$build/classes"
+
+echo -e "\033[0;36mCompiling\033[0m"
+javac -d "$build/classes" rubikscube/*.java
+
+echo -e "\033[0;36mGenerating tables\033[0m"
+java -cp "$build/classes" rubikscube.TableGenerator "$build/classes"
+jar cfe "$build/rubikscube.jar" rubikscube.Solver -C "$build/classes" .
+
+echo -e "\033[0;36mBuilding runtime image\033[0m"
+modules=$(jdeps --print-module-deps --ignore-missing-deps "$build/rubikscube.jar")
+jlink --add-modules "$modules" --strip-debug --no-header-files --no-man-pages --compress=2 --output "$build/runtime"
+# jlink on 17 doesn't generate the default CDS archive for the JDK classes, so dump it ourselves
+"$build/runtime/bin/java" -Xshare:dump > /dev/null
+
+echo -e "\033[0;36mTraining run for the AppCDS archive\033[0m"
+java -cp "$build/classes" rubikscube.Benchmark scramble "$build/train.txt"
+# No cache file during training, so the archive also covers the classes used to load the jar resources
+"$build/runtime/bin/java" -XX:ArchiveClassesAtExit="$build/rubikscube.jsa" -Drubikscube.tableCache=off \
+    -cp "$build/rubikscube.jar" rubikscube.Solver "$build/train.txt" "$build/train_solution.txt"
+
+# One solve is over long before C2 would pay off, so the launcher only uses the C1 compiler
+cat > "$build/solve" <<'EOF'
+#!/bin/bash
+dir=$(dirname "$0")
+exec "$dir/runtime/bin/java" -XX:SharedArchiveFile="$dir/rubikscube.jsa" -XX:TieredStopAtLevel=1 $JAVA_OPTS -cp "$dir/rubikscube.jar" rubikscube.Solver "$@"
+EOF
+chmod +x "$build/solve"
+
+echo -e "\033[1;33mDone: $build/solve input_file output_file\033[0m"
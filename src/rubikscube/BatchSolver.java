@@ -0,0 +1,227 @@
+package rubikscube;
+
+/*
+ * Solves lots of independent cubes on a fixed pool of worker threads. Search is thread safe (every solve takes
+ * its own SearchContext from the pool), so each worker just calls Search.solution, and with N workers there are
+ * never more than N contexts around.
+ *
+ * Cubes are handed to the workers a few at a time (WINDOW per worker in flight), so a stream of millions of cubes
+ * never sits in memory all at once and the workers never wait for the caller either.
+ *
+ *   try (BatchSolver batch = new BatchSolver(4, 21, 10)) {
+ *       List<String> solutions = batch.solveAll(cubes);                   // input order
+ *       batch.solveAll(cubes, (index, solution) -> ...);                   // as completed
+ *       batch.solveAll(cubes.stream()).forEach(System.out::println);       // lazily, input order
+ *       System.out.println(batch.cubesPerSecond() + " cubes/s");
+ *   }
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class BatchSolver implements AutoCloseable {
+
+    // Cubes in flight per worker
+    static final int WINDOW = 4;
+
+    private final int parallelism;
+    private final int maxDepth;
+    private final long timeOut;
+    private final ExecutorService workers;
+
+    // Throughput over the lifetime of this solver: cubes done, and the wall time during which at least one
+    // solveAll run was going. Overlapping runs share the workers, so their time is only counted once.
+    // An ordered run lasts until its last solution was taken or its stream was closed.
+    private final AtomicLong solved = new AtomicLong();
+    private int activeRuns;
+    private long runsStart;
+    private long elapsedNanos;
+
+    // Called for every cube as soon as its solution is ready, on the thread that called solveAll
+    public interface Listener {
+        void onSolved(int index, String solution);
+    }
+
+    // maxDepth and timeOut (seconds, per cube) are passed on to Search.solution
+    public BatchSolver(int parallelism, int maxDepth, long timeOut) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        this.parallelism = parallelism;
+        this.maxDepth = maxDepth;
+        this.timeOut = timeOut;
+        this.workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "rubikscube-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // One worker per core
+    public BatchSolver(int maxDepth, long timeOut) {
+        this(Runtime.getRuntime().availableProcessors(), maxDepth, timeOut);
+    }
+
+    // All solutions, in the same order as the cubes
+    public List<String> solveAll(Iterable<CubieCube> cubes) {
+        List<String> solutions = new ArrayList<>();
+        Ordered ordered = solveAll(cubes.iterator());
+        try {
+            ordered.forEachRemaining(solutions::add);
+        } finally {
+            ordered.finish();
+        }
+        return solutions;
+    }
+
+    // The solutions as a lazy stream in input order. Cubes are only taken from the input as the workers need them,
+    // so this works on streams too big to hold in memory. Closing it closes the input stream, and drops the cubes
+    // that are still queued, which matters after a short-circuiting operation like limit or findFirst.
+    // Until then the run counts as going on for cubesPerSecond.
+    public Stream<String> solveAll(Stream<CubieCube> cubes) {
+        Ordered solutions = solveAll(cubes.iterator());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(solutions, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(solutions::finish)
+                .onClose(cubes::close);
+    }
+
+    // Every solution goes to the listener as soon as it is ready, so in completion order.
+    // The index says which cube it belongs to (0 for the first cube of the input).
+    public void solveAll(Iterable<CubieCube> cubes, Listener listener) {
+        runStarted();
+        CompletionService<Solved> done = new ExecutorCompletionService<>(workers);
+        Iterator<CubieCube> input = cubes.iterator();
+        int submitted = 0, inFlight = 0;
+        try {
+            while (true) {
+                while (inFlight < WINDOW * parallelism && input.hasNext()) {
+                    CubieCube cube = input.next();
+                    int index = submitted++;
+                    done.submit(() -> new Solved(index, solve(cube)));
+                    inFlight++;
+                }
+                if (inFlight == 0)
+                    break;
+                Solved result = get(done.take());
+                inFlight--;
+                listener.onSolved(result.index, result.solution);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while solving", e);
+        } finally {
+            runFinished();
+        }
+    }
+
+    private Ordered solveAll(Iterator<CubieCube> input) {
+        return new Ordered(input);
+    }
+
+    // Solutions in input order, keeping a window of cubes in flight ahead of the one the caller waits for.
+    // The run ends when the input is used up or finish() is called, whichever comes first.
+    private class Ordered implements Iterator<String> {
+        final Iterator<CubieCube> input;
+        final ArrayDeque<Future<String>> inFlight = new ArrayDeque<>();
+        boolean finished;
+
+        Ordered(Iterator<CubieCube> input) {
+            this.input = input;
+            runStarted();
+        }
+
+        void fill() {
+            while (!finished && inFlight.size() < WINDOW * parallelism && input.hasNext()) {
+                CubieCube cube = input.next();
+                inFlight.add(workers.submit(() -> solve(cube)));
+            }
+        }
+
+        public boolean hasNext() {
+            fill();
+            if (inFlight.isEmpty())
+                finish();
+            return !inFlight.isEmpty();
+        }
+
+        public String next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            try {
+                return get(inFlight.poll());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while solving", e);
+            }
+        }
+
+        // Cubes a worker has not started yet are dropped, the ones being solved still finish
+        void finish() {
+            if (finished)
+                return;
+            finished = true;
+            for (Future<String> future : inFlight) future.cancel(false);
+            inFlight.clear();
+            runFinished();
+        }
+    }
+
+    private synchronized void runStarted() {
+        if (activeRuns++ == 0)
+            runsStart = System.nanoTime();
+    }
+
+    private synchronized void runFinished() {
+        if (--activeRuns == 0)
+            elapsedNanos += System.nanoTime() - runsStart;
+    }
+
+    private String solve(CubieCube cube) {
+        String solution = Search.solution(cube, maxDepth, Search.deadlineAfter(timeOut), new CancellationToken());
+        solved.incrementAndGet();
+        return solution;
+    }
+
+    private static <T> T get(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("solve failed", e.getCause());
+        }
+    }
+
+    private record Solved(int index, String solution) {
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    // Cubes solved so far
+    public long solvedCount() {
+        return solved.get();
+    }
+
+    // Cubes solved per second of solveAll, counting the runs still going up to now
+    public synchronized double cubesPerSecond() {
+        long nanos = elapsedNanos + (activeRuns > 0 ? System.nanoTime() - runsStart : 0);
+        return nanos == 0 ? 0 : solved.get() * 1e9 / nanos;
+    }
+
+    public void close() {
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,435 @@
+package rubikscube;
+
+/*
+ * Small command line benchmarks for the solver. Nothing fancy, just System.nanoTime around loops
+ * with a warm up round first so the JIT has compiled the code we want to measure.
+ *
+ *   java rubikscube.Benchmark movetables   per-node cost of the move table lookups, flat vs 2D layout
+ *   java rubikscube.Benchmark solve [n]    time to solve n random cubes
+ *   java rubikscube.Benchmark entry [n]    move table lookups per phase 2 attempt for the phase 2 entry coordinates
+ *   java rubikscube.Benchmark stats [n]    average SearchResult counters, and the slowest solve in full
+ *   java rubikscube.Benchmark nodes [n]    search nodes (phase 1 and phase 2) per second
+ *   java rubikscube.Benchmark batch [n] [threads]   throughput of BatchSolver in cubes/s, for 1 up to threads workers
+ *   java rubikscube.Benchmark parallel [n] time per cube of Search.solution vs Search.solutionParallel
+ *   java rubikscube.Benchmark race [n]     mean and worst case time per cube of Search.solution vs Search.solutionRace
+ *   java rubikscube.Benchmark first [n]    distribution of the time to the first solution (run it with and without
+ *                                          -Drubikscube.orderedPhase1=true to compare the phase 1 child orders)
+ *   java rubikscube.Benchmark anytime [n] [ms]  average solution length over time with Search.solutionAnytime
+ *   java rubikscube.Benchmark quarter [n] [ms]  solution string length of Search vs QuarterTurnSearch with ms per cube
+ *   java rubikscube.Benchmark optimal [n] [turns]   optimal vs two-phase solutions of n cubes scrambled with <turns> turns
+ *   java rubikscube.Benchmark scramble <file> [seed]   write a random scramble in the Solver input format
+ *   java rubikscube.Benchmark corpus <dir> [n]         write n scrambles as <dir>/scrambleNN.txt
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class Benchmark {
+
+    public static void main(String[] args) throws IOException, IncorrectFormatException {
+        String mode = args.length > 0 ? args[0] : "solve";
+        switch (mode) {
+            case "movetables" -> moveTables();
+            case "solve" -> solve(args.length > 1 ? Integer.parseInt(args[1]) : 100);
+            case "entry" -> entry(args.length > 1 ? Integer.parseInt(args[1]) : 100);
+            case "stats" -> stats(args.length > 1 ? Integer.parseInt(args[1]) : 100);
+            case "nodes" -> nodes(args.length > 1 ? Integer.parseInt(args[1]) : 100);
+            case "batch" -> batch(args.length > 1 ? Integer.parseInt(args[1]) : 200,
+                    args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors());
+            case "parallel" -> parallel(args.length > 1 ? Integer.parseInt(args[1]) : 100);
+            case "race" -> race(args.length > 1 ? Integer.parseInt(args[1]) : 100);
+            case "first" -> first(args.length > 1 ? Integer.parseInt(args[1]) : 200);
+            case "anytime" -> anytime(args.length > 1 ? Integer.parseInt(args[1]) : 20, args.length > 2 ? Long.parseLong(args[2]) : 1000);
+            case "quarter" -> quarter(args.length > 1 ? Integer.parseInt(args[1]) : 20, args.length > 2 ? Long.parseLong(args[2]) : 500);
+            case "optimal" -> optimal(args.length > 1 ? Integer.parseInt(args[1]) : 10, args.length > 2 ? Integer.parseInt(args[2]) : 12);
+            case "scramble" -> scramble(args[1], args.length > 2 ? Long.parseLong(args[2]) : 1);
+            case "corpus" -> corpus(args[1], args.length > 2 ? Integer.parseInt(args[2]) : 50);
+            default -> System.out.println("usage: java rubikscube.Benchmark movetables|solve [n]|entry [n]|stats [n]|nodes [n]|batch [n] [threads]|parallel [n]|race [n]|first [n]|anytime [n] [ms]|quarter [n] [ms]|optimal [n] [turns]|scramble <file> [seed]|corpus <dir> [n]");
+        }
+    }
+
+    // A random cube made by applying random face turns to a solved cube
+    static CubieCube randomCube(Random random, int turns) {
+        CubieCube cc = new CubieCube();
+        for (int i = 0; i < turns; i++) {
+            CubieCube move = CubieCube.moves[random.nextInt(6)];
+            for (int k = random.nextInt(3); k >= 0; k--) {
+                cc.multiplyCorner(move);
+                cc.multiplyEdge(move);
+            }
+        }
+        return cc;
+    }
+
+    // Walks a random sequence of phase 2 moves (so the phase 2 coordinates stay valid) through the tables
+    // the way the search does per node: phase 1 updates flip, twist and slice and reads both phase 1 pruning tables,
+    // phase 2 updates the four phase 2 coordinates and reads both phase 2 pruning tables.
+    // The 2D copies are rebuilt from the flat tables here only so the two layouts can be compared.
+    static void moveTables() {
+        int nodes = 20_000_000;
+        int[] phase2Moves = {0, 1, 2, 4, 7, 9, 10, 11, 13, 16}; // U, D, R2, F2, L2, B2
+        int[] moves = new int[1 << 16];
+        Random random = new Random(1);
+        for (int i = 0; i < moves.length; i++) moves[i] = phase2Moves[random.nextInt(phase2Moves.length)];
+
+        short[][] twist2D = toRows(CoordCube.twistMove);
+        short[][] flip2D = toRows(CoordCube.flipMove);
+        short[][] FRtoBR2D = toRows(CoordCube.FRtoBR_Move);
+        short[][] URFtoDLF2D = toRows(CoordCube.URFtoDLF_Move);
+        short[][] URtoDF2D = toRows(CoordCube.URtoDF_Move);
+        short[][] parity2D = toRows(CoordCube.parityMove);
+
+        for (int round = 0; round < 3; round++) {
+            long t0 = System.nanoTime();
+            long sink = walkFlat(moves, nodes);
+            long t1 = System.nanoTime();
+            sink += walk2D(moves, nodes, twist2D, flip2D, FRtoBR2D, URFtoDLF2D, URtoDF2D, parity2D);
+            long t2 = System.nanoTime();
+            if (round == 0) continue; // warm up
+            System.out.printf("flat: %.2f ns/node   2D: %.2f ns/node   (%d)%n",
+                    (t1 - t0) / (double) nodes, (t2 - t1) / (double) nodes, sink & 1);
+        }
+    }
+
+    static long walkFlat(int[] moves, int nodes) {
+        int flip = 0, twist = 0, slice = 0, URFtoDLF = 0, FRtoBR = 0, URtoDF = 0, parity = 0;
+        long sum = 0;
+        for (int i = 0; i < nodes; i++) {
+            int mv = moves[i & (moves.length - 1)];
+            flip = CoordCube.getMove(CoordCube.flipMove, flip, mv);
+            twist = CoordCube.getMove(CoordCube.twistMove, twist, mv);
+            slice = CoordCube.getMove(CoordCube.FRtoBR_Move, slice * 24, mv) / 24;
+            sum += Math.max(
+                    CoordCube.getPruning(CoordCube.Slice_Flip_Prune, CoordCube.NUM_SLICE_POSITIONS_PHASE1 * flip + slice),
+                    CoordCube.getPruning(CoordCube.Slice_Twist_Prune, CoordCube.NUM_SLICE_POSITIONS_PHASE1 * twist + slice));
+
+            URFtoDLF = CoordCube.getMove(CoordCube.URFtoDLF_Move, URFtoDLF, mv);
+            FRtoBR = CoordCube.getMove(CoordCube.FRtoBR_Move, FRtoBR, mv);
+            parity = CoordCube.getMove(CoordCube.parityMove, parity, mv);
+            URtoDF = CoordCube.getMove(CoordCube.URtoDF_Move, URtoDF, mv);
+            sum += Math.max(
+                    CoordCube.getPruning(CoordCube.Slice_URtoDF_Parity_Prune, (CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2 * URtoDF + FRtoBR) * 2 + parity),
+                    CoordCube.getPruning(CoordCube.Slice_URFtoDLF_Parity_Prune, (CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2 * URFtoDLF + FRtoBR) * 2 + parity));
+        }
+        return sum;
+    }
+
+    static long walk2D(int[] moves, int nodes, short[][] twistMove, short[][] flipMove, short[][] FRtoBR_Move,
+                       short[][] URFtoDLF_Move, short[][] URtoDF_Move, short[][] parityMove) {
+        int flip = 0, twist = 0, slice = 0, URFtoDLF = 0, FRtoBR = 0, URtoDF = 0, parity = 0;
+        long sum = 0;
+        for (int i = 0; i < nodes; i++) {
+            int mv = moves[i & (moves.length - 1)];
+            flip = flipMove[flip][mv];
+            twist = twistMove[twist][mv];
+            slice = FRtoBR_Move[slice * 24][mv] / 24;
+            sum += Math.max(
+                    CoordCube.getPruning(CoordCube.Slice_Flip_Prune, CoordCube.NUM_SLICE_POSITIONS_PHASE1 * flip + slice),
+                    CoordCube.getPruning(CoordCube.Slice_Twist_Prune, CoordCube.NUM_SLICE_POSITIONS_PHASE1 * twist + slice));
+
+            URFtoDLF = URFtoDLF_Move[URFtoDLF][mv];
+            FRtoBR = FRtoBR_Move[FRtoBR][mv];
+            parity = parityMove[parity][mv];
+            URtoDF = URtoDF_Move[URtoDF][mv];
+            sum += Math.max(
+                    CoordCube.getPruning(CoordCube.Slice_URtoDF_Parity_Prune, (CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2 * URtoDF + FRtoBR) * 2 + parity),
+                    CoordCube.getPruning(CoordCube.Slice_URFtoDLF_Parity_Prune, (CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2 * URFtoDLF + FRtoBR) * 2 + parity));
+        }
+        return sum;
+    }
+
+    static short[][] toRows(Table flat) {
+        short[][] rows = new short[flat.length() / CoordCube.NUM_MOVES][CoordCube.NUM_MOVES];
+        for (int i = 0; i < rows.length; i++) {
+            for (int m = 0; m < CoordCube.NUM_MOVES; m++) rows[i][m] = flat.getShort(CoordCube.NUM_MOVES * i + m);
+        }
+        return rows;
+    }
+
+    // Solve n random cubes and report the average time per cube
+    static void solve(int n) throws IOException, IncorrectFormatException {
+        Random random = new Random(7);
+        CubieCube[] cubes = new CubieCube[n];
+        for (int i = 0; i < n; i++) cubes[i] = randomCube(random, 40);
+
+        long t0 = System.nanoTime();
+        for (CubieCube cc : cubes) Search.solution(cc, 21, 10);
+        long t1 = System.nanoTime();
+        System.out.printf("%d cubes in %.1f ms, %.2f ms/cube%n", n, (t1 - t0) / 1e6, (t1 - t0) / 1e6 / n);
+    }
+
+    // Search.totalDepth only replays the phase 1 moves that changed since the last phase 2 attempt.
+    // Counts the lookups that takes against replaying the whole phase 1 prefix every time.
+    static void entry(int n) {
+        Random random = new Random(7);
+        long calls = 0, entryLookups = 0, replayLookups = 0;
+        for (int i = 0; i < n; i++) {
+            SearchResult result = Search.solve(randomCube(random, 40), 21, Search.deadlineAfter(10), new CancellationToken());
+            calls += result.phase2Calls;
+            entryLookups += result.entryLookups;
+            replayLookups += result.replayLookups;
+        }
+        System.out.printf("%d phase 2 attempts: %.2f lookups per attempt, replaying the prefix would take %.2f%n",
+                calls, (double) entryLookups / calls, (double) replayLookups / calls);
+    }
+
+    // Where the time goes: SearchResult counters averaged over n random cubes, and the full result of the slowest one
+    static void stats(int n) {
+        Random random = new Random(7);
+        long phase1Nodes = 0, phase2Calls = 0, cornerRejects = 0, edgeRejects = 0, cornerEdgeRejects = 0, cacheHits = 0, phase2Nodes = 0, phase1Nanos = 0, phase2Nanos = 0;
+        SearchResult slowest = null;
+        for (int i = 0; i < n; i++) {
+            SearchResult result = Search.solve(randomCube(random, 40), 21, Search.deadlineAfter(10), new CancellationToken());
+            phase1Nodes += result.totalPhase1Nodes();
+            phase2Calls += result.phase2Calls;
+            cornerRejects += result.cornerPruneRejects;
+            edgeRejects += result.edgePruneRejects;
+            cornerEdgeRejects += result.cornerEdgePruneRejects;
+            cacheHits += result.phase2CacheHits;
+            phase2Nodes += result.phase2Nodes;
+            phase1Nanos += result.phase1Nanos;
+            phase2Nanos += result.phase2Nanos;
+            if (slowest == null || result.phase1Nanos + result.phase2Nanos > slowest.phase1Nanos + slowest.phase2Nanos) slowest = result;
+        }
+        System.out.printf("per cube: phase 1 %d nodes, %.2f ms; phase 2 %d calls (%.1f%% stopped by corners, %.1f%% by edges, %.1f%% by corners and edges, %.1f%% by the cache), %d nodes, %.2f ms%n",
+                phase1Nodes / n, phase1Nanos / 1e6 / n, phase2Calls / n, 100.0 * cornerRejects / phase2Calls, 100.0 * edgeRejects / phase2Calls,
+                100.0 * cornerEdgeRejects / phase2Calls, 100.0 * cacheHits / phase2Calls,
+                phase2Nodes / n, phase2Nanos / 1e6 / n);
+        System.out.println("slowest: " + slowest);
+    }
+
+    // Raw DFS speed: nodes generated per second over n random cubes, best of 3 rounds
+    static void nodes(int n) {
+        Random random = new Random(7);
+        CubieCube[] cubes = new CubieCube[n];
+        for (int i = 0; i < n; i++) cubes[i] = randomCube(random, 40);
+
+        for (int round = 0; round < 3; round++) {
+            long phase1Nodes = 0, phase2Nodes = 0, nanos = 0;
+            for (CubieCube cc : cubes) {
+                SearchResult result = Search.solve(cc, 21, Search.deadlineAfter(10), new CancellationToken());
+                phase1Nodes += result.totalPhase1Nodes();
+                phase2Nodes += result.phase2Nodes;
+                nanos += result.phase1Nanos + result.phase2Nanos;
+            }
+            System.out.printf("%.2f M nodes/s (%d phase 1, %d phase 2 nodes in %.1f ms)%n",
+                    (phase1Nodes + phase2Nodes) * 1e3 / nanos, phase1Nodes, phase2Nodes, nanos / 1e6);
+        }
+    }
+
+    // The same cubes through BatchSolvers with 1, 2, 4, ... workers, checking the ordered results match a plain loop
+    static void batch(int n, int threads) throws IOException, IncorrectFormatException {
+        Random random = new Random(7);
+        List<CubieCube> cubes = new ArrayList<>();
+        for (int i = 0; i < n; i++) cubes.add(randomCube(random, 40));
+        List<String> expected = new ArrayList<>();
+        for (CubieCube cc : cubes) expected.add(Search.solution(cc, 21, 10));
+
+        for (int workers = 1; workers <= threads; workers *= 2) {
+            try (BatchSolver batch = new BatchSolver(workers, 21, 10)) {
+                List<String> solutions = batch.solveAll(cubes);
+                System.out.printf("%2d workers: %.1f cubes/s%s%n", workers, batch.cubesPerSecond(),
+                        solutions.equals(expected) ? "" : "  (solutions differ!)");
+            }
+        }
+    }
+
+    // Same cubes through the sequential and the parallel search, a few rounds so both get compiled.
+    // Only interesting on a multi-core machine, see Search.solutionParallel.
+    static void parallel(int n) throws IOException, IncorrectFormatException {
+        Random random = new Random(7);
+        CubieCube[] cubes = new CubieCube[n];
+        for (int i = 0; i < n; i++) cubes[i] = randomCube(random, 40);
+
+        for (int round = 0; round < 3; round++) {
+            long t0 = System.nanoTime();
+            for (CubieCube cc : cubes) Search.solution(cc, 21, 10);
+            long t1 = System.nanoTime();
+            for (CubieCube cc : cubes) Search.solutionParallel(cc, 21, 10);
+            long t2 = System.nanoTime();
+            if (round == 0) continue; // warm up
+            System.out.printf("sequential: %.2f ms/cube   parallel: %.2f ms/cube   (%d threads)%n",
+                    (t1 - t0) / 1e6 / n, (t2 - t1) / 1e6 / n, ForkJoinPool.commonPool().getParallelism());
+        }
+    }
+
+    // The race mode is about the slow cubes, so besides the mean this reports the 99th percentile and the worst cube.
+    // It gets its own pool of 6 threads, so the racers run side by side even where the common pool has only one.
+    static void race(int n) throws IOException, IncorrectFormatException {
+        ForkJoinPool pool = new ForkJoinPool(6);
+        Random random = new Random(7);
+        CubieCube[] cubes = new CubieCube[n];
+        for (int i = 0; i < n; i++) cubes[i] = randomCube(random, 40);
+
+        long[] sequential = new long[n], race = new long[n];
+        for (int round = 0; round < 2; round++) { // first round is warm up
+            for (int i = 0; i < n; i++) {
+                long t0 = System.nanoTime();
+                Search.solution(cubes[i], 21, 10);
+                long t1 = System.nanoTime();
+                Search.solutionRace(cubes[i], 21, 10, pool);
+                long t2 = System.nanoTime();
+                sequential[i] = t1 - t0;
+                race[i] = t2 - t1;
+            }
+        }
+        Arrays.sort(sequential);
+        Arrays.sort(race);
+        System.out.printf("sequential: mean %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                Arrays.stream(sequential).average().orElse(0) / 1e6, sequential[n * 99 / 100] / 1e6, sequential[n - 1] / 1e6);
+        System.out.printf("race:       mean %.2f ms, p99 %.2f ms, max %.2f ms   (%d threads)%n",
+                Arrays.stream(race).average().orElse(0) / 1e6, race[n * 99 / 100] / 1e6, race[n - 1] / 1e6,
+                pool.getParallelism());
+        pool.shutdown();
+    }
+
+    // Time until Search.solution returns its (first) solution, as a distribution over n random cubes, together
+    // with the phase 1 nodes it took and the solution length. Search.ORDERED_PHASE1 is fixed when the class loads,
+    // so the two child orders are compared by running this twice.
+    static void first(int n) {
+        Random random = new Random(7);
+        CubieCube[] cubes = new CubieCube[n];
+        for (int i = 0; i < n; i++) cubes[i] = randomCube(random, 40);
+
+        long[] times = new long[n], nodes = new long[n];
+        long moves = 0;
+        for (int round = 0; round < 2; round++) { // first round is warm up
+            moves = 0;
+            for (int i = 0; i < n; i++) {
+                long t0 = System.nanoTime();
+                SearchResult result = Search.solve(cubes[i], 21, Search.deadlineAfter(10), new CancellationToken());
+                times[i] = System.nanoTime() - t0;
+                nodes[i] = result.totalPhase1Nodes();
+                moves += moveCount(result.solution);
+            }
+        }
+        Arrays.sort(times);
+        Arrays.sort(nodes);
+        System.out.printf("%s children: %.2f moves%n", Search.ORDERED_PHASE1 ? "closest first" : "face order", (double) moves / n);
+        System.out.printf("  ms:          mean %.2f, p50 %.2f, p90 %.2f, p99 %.2f, max %.2f%n",
+                Arrays.stream(times).average().orElse(0) / 1e6, times[n / 2] / 1e6, times[n * 9 / 10] / 1e6,
+                times[n * 99 / 100] / 1e6, times[n - 1] / 1e6);
+        System.out.printf("  phase 1 nodes: mean %.0f, p50 %d, p90 %d, p99 %d, max %d%n",
+                Arrays.stream(nodes).average().orElse(0), nodes[n / 2], nodes[n * 9 / 10], nodes[n * 99 / 100], nodes[n - 1]);
+    }
+
+    // Give every cube ms milliseconds in anytime mode and report the average length of the best solution
+    // found by a few points in time, to see how much waiting longer buys
+    static void anytime(int n, long ms) {
+        long[] checkpoints = {ms / 100, ms / 10, ms / 4, ms / 2, ms};
+        double[] lengthSum = new double[checkpoints.length];
+        Random random = new Random(7);
+        for (int i = 0; i < n; i++) {
+            CubieCube cc = randomCube(random, 40);
+            int[] best = new int[checkpoints.length];
+            int[] first = {Integer.MAX_VALUE};
+            Arrays.fill(best, Integer.MAX_VALUE);
+            long t0 = System.nanoTime();
+            Search.solutionAnytime(cc, 21, 0, ms, (solution, length) -> {
+                long elapsed = (System.nanoTime() - t0) / 1_000_000;
+                if (first[0] == Integer.MAX_VALUE) first[0] = length;
+                for (int k = 0; k < checkpoints.length; k++) {
+                    if (elapsed <= checkpoints[k]) best[k] = Math.min(best[k], length);
+                }
+            });
+            // A checkpoint before the first solution counts the first solution, so the averages stay comparable
+            for (int k = 0; k < checkpoints.length; k++) {
+                if (best[k] == Integer.MAX_VALUE) best[k] = first[0];
+            }
+            for (int k = 0; k < checkpoints.length; k++) lengthSum[k] += best[k];
+        }
+        for (int k = 0; k < checkpoints.length; k++) {
+            System.out.printf("%6d ms: %.2f moves%n", checkpoints[k], lengthSum[k] / n);
+        }
+    }
+
+    // What the executors actually turn: characters of the solution string, for Search (fewest face turns)
+    // and for QuarterTurnSearch (fewest characters) given ms per cube. The first call loads its tables, untimed.
+    static void quarter(int n, long ms) throws IOException, IncorrectFormatException {
+        QuarterTurnSearch.solution(new CubieCube(), QuarterTurnSearch.MAX_LENGTH, ms);
+        Random random = new Random(7);
+        long searchChars = 0, quarterChars = 0, searchMoves = 0, quarterMoves = 0, searchTime = 0, quarterTime = 0;
+        for (int i = 0; i < n; i++) {
+            CubieCube cc = randomCube(random, 40);
+            long start = System.nanoTime();
+            String faceTurns = Search.solution(cc, 21, 10);
+            long middle = System.nanoTime();
+            String quarterTurns = QuarterTurnSearch.solution(cc, QuarterTurnSearch.MAX_LENGTH, ms);
+            long end = System.nanoTime();
+            searchChars += faceTurns.length();
+            quarterChars += quarterTurns.length();
+            searchMoves += moveCount(faceTurns);
+            quarterMoves += moveCount(quarterTurns);
+            searchTime += middle - start;
+            quarterTime += end - middle;
+        }
+        System.out.printf("Search:            %.2f characters, %.2f face turns, %.1f ms/cube%n",
+                (double) searchChars / n, (double) searchMoves / n, searchTime / 1e6 / n);
+        System.out.printf("QuarterTurnSearch: %.2f characters, %.2f face turns, %.1f ms/cube%n",
+                (double) quarterChars / n, (double) quarterMoves / n, quarterTime / 1e6 / n);
+    }
+
+    // Solve the same fixed corpus with OptimalSearch and Search and compare time and length.
+    // Short scrambles only, since a random cube can take hours to solve optimally on one core.
+    // The first call also builds (or loads) the pattern databases, which is timed separately.
+    static void optimal(int n, int turns) throws IOException, IncorrectFormatException {
+        Random random = new Random(7);
+        CubieCube[] cubes = new CubieCube[n];
+        for (int i = 0; i < n; i++) cubes[i] = randomCube(random, turns);
+
+        long t0 = System.nanoTime();
+        OptimalSearch.solution(new CubieCube(), 1);
+        long t1 = System.nanoTime();
+        System.out.printf("pattern databases ready in %.1f s%n", (t1 - t0) / 1e9);
+
+        long optimalTime = 0, twoPhaseTime = 0;
+        int optimalMoves = 0, twoPhaseMoves = 0;
+        for (CubieCube cc : cubes) {
+            long start = System.nanoTime();
+            int optimalLength = moveCount(OptimalSearch.solution(cc, 3600));
+            long middle = System.nanoTime();
+            int twoPhaseLength = moveCount(Search.solution(cc, 21, 10));
+            long end = System.nanoTime();
+            optimalTime += middle - start;
+            twoPhaseTime += end - middle;
+            optimalMoves += optimalLength;
+            twoPhaseMoves += twoPhaseLength;
+            if (optimalLength > twoPhaseLength) System.out.println("optimal solution longer than two-phase one!");
+        }
+        System.out.printf("optimal:   %.1f ms/cube, %.2f moves%n", optimalTime / 1e6 / n, (double) optimalMoves / n);
+        System.out.printf("two-phase: %.1f ms/cube, %.2f moves%n", twoPhaseTime / 1e6 / n, (double) twoPhaseMoves / n);
+    }
+
+    // Face turns in a solution string: every run of the same letter is one turn (UUU is U')
+    static int moveCount(String solution) {
+        int count = 0;
+        for (int i = 0; i < solution.length(); i++) {
+            if (i == 0 || solution.charAt(i) != solution.charAt(i - 1)) count++;
+        }
+        return count;
+    }
+
+    // Write a random scramble (60 random quarter turns) in the input format Solver reads, for the startup scripts
+    static void scramble(String file, long seed) throws IOException {
+        Random random = new Random(seed);
+        StringBuilder moves = new StringBuilder();
+        for (int i = 0; i < 60; i++) moves.append("FBRLUD".charAt(random.nextInt(6)));
+        RubiksCube cube = new RubiksCube();
+        cube.applyMoves(moves.toString());
+        Files.writeString(Path.of(file), cube.toString());
+    }
+
+    // Write n scrambles (seeds 1..n) as <dir>/scramble01.txt, scramble02.txt, ... like run_tests.sh expects
+    static void corpus(String dir, int n) throws IOException {
+        Files.createDirectories(Path.of(dir));
+        for (int i = 1; i <= n; i++) {
+            scramble(Path.of(dir, String.format("scramble%02d.txt", i)).toString(), i);
+        }
+    }
+}
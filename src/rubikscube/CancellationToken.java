@@ -0,0 +1,32 @@
+package rubikscube;
+
+/*
+ * Lets another thread stop a running Search. The search polls the token every few thousand nodes
+ * (see Search.CHECK_INTERVAL), in phase 1 and in phase 2, so it stops within a fraction of a millisecond
+ * of cancel() instead of at its deadline.
+ *
+ * A token can have a parent, and is cancelled as soon as the parent is. The parallel and race modes use
+ * that: their workers share a child of the caller's token, and the winning worker cancels only the child.
+ */
+
+public class CancellationToken {
+
+    private final CancellationToken parent;
+    private volatile boolean cancelled;
+
+    public CancellationToken() {
+        this(null);
+    }
+
+    public CancellationToken(CancellationToken parent) {
+        this.parent = parent;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (parent != null && parent.isCancelled());
+    }
+}
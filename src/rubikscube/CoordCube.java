@@ -7,6 +7,10 @@ package rubikscube;
  * The main idea is to pre-compute everything (Move Tables and Pruning Tables) so the search is fast.
  */
 
+import java.nio.Buffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+
 public class CoordCube {
 
     // Const definitions mostly taken from Kociemba Official Documentation
@@ -53,42 +57,120 @@ public class CoordCube {
 
     // PRUNING TABLES (Heuristics)
     // These tables store the minimum number of moves to reach the solved state.
-    // I decided to use simple byte arrays instead of the original nibble packing 
-    // to keep the code cleaner and easier to understand.
+    // By default every entry is a plain byte to keep the code cleaner and easier to understand.
+    // Starting the JVM with -Drubikscube.packedPruning=true switches to Kociemba's original nibble packing:
+    // two entries per byte (even index in the low nibble), which halves the memory the tables take.
+    // That works because the largest distance in any of these tables is 14, and 15 (0xF) means unvisited.
+    public static final boolean PACKED_PRUNING = Boolean.getBoolean("rubikscube.packedPruning");
+
+    // Optional high memory phase 1 heuristic (about 45 MB with the symmetry tables), see FlipSliceTwistPruning.
+    // Turned on with -Drubikscube.phase1Table=true. It lives in its own class so it is never built unless enabled.
+    public static final boolean FLIPSLICE_TWIST_PRUNING = Boolean.getBoolean("rubikscube.phase1Table");
+
+    // Optional extra phase 2 heuristic over all corners and all U/D edges (about 56 MB), see CornerEdgePruning.
+    // Turned on with -Drubikscube.phase2Table=true, same idea as the phase 1 one.
+    public static final boolean CORNER_EDGE_PRUNING = Boolean.getBoolean("rubikscube.phase2Table");
 
     // Phase 1 Tables
-    public static byte[] Slice_Twist_Prune = new byte[NUM_SLICE_POSITIONS_PHASE1 * NUM_CORNER_ORIENTATIONS];
-    public static byte[] Slice_Flip_Prune = new byte[NUM_SLICE_POSITIONS_PHASE1 * NUM_EDGE_ORIENTATIONS];
+    public static final Table Slice_Twist_Prune = Table.ofBytes(pruningBytes(NUM_SLICE_POSITIONS_PHASE1 * NUM_CORNER_ORIENTATIONS));
+    public static final Table Slice_Flip_Prune = Table.ofBytes(pruningBytes(NUM_SLICE_POSITIONS_PHASE1 * NUM_EDGE_ORIENTATIONS));
 
     // Phase 2 Tables
-    public static byte[] Slice_URFtoDLF_Parity_Prune = new byte[NUM_SLICE_PERMUTATIONS_PHASE2 * NUM_CORNER_PERMUTATIONS * NUM_PARITIES];
-    public static byte[] Slice_URtoDF_Parity_Prune = new byte[NUM_SLICE_PERMUTATIONS_PHASE2 * NUM_EDGE_PERMUTATIONS_PHASE2 * NUM_PARITIES];
+    public static final Table Slice_URFtoDLF_Parity_Prune = Table.ofBytes(pruningBytes(NUM_SLICE_PERMUTATIONS_PHASE2 * NUM_CORNER_PERMUTATIONS * NUM_PARITIES));
+    public static final Table Slice_URtoDF_Parity_Prune = Table.ofBytes(pruningBytes(NUM_SLICE_PERMUTATIONS_PHASE2 * NUM_EDGE_PERMUTATIONS_PHASE2 * NUM_PARITIES));
 
-    // Helpers to access the tables
-    public static void setPruning(byte[] table, int index, byte value) {
-        table[index] = value;
+    // How many bytes a pruning table with this many entries needs in the current storage mode
+    static int pruningBytes(int entries) {
+        return PACKED_PRUNING ? (entries + 1) / 2 : entries;
     }
 
-    public static byte getPruning(byte[] table, int index) {
-        return table[index];
+    // Does nothing, but calling it runs the static initializer, so the tables are ready afterwards
+    static void load() {
+    }
+
+    // Helpers to access the tables
+    // The pruning tables are only written while they are generated, by PruningTableBuilder (see packPruning).
+    public static byte getPruning(Table table, int index) {
+        if (PACKED_PRUNING) {
+            return (byte) ((table.getByte(index >> 1) >> ((index & 1) << 2)) & 0x0f);
+        }
+        return table.getByte(index);
     }
 
     // MOVE TABLES
     // These allow us to apply a move to a coordinate instantly (O(1)) without recalculating everything.
-    public static short[][] twistMove = new short[NUM_CORNER_ORIENTATIONS][NUM_MOVES];
-    public static short[][] flipMove = new short[NUM_EDGE_ORIENTATIONS][NUM_MOVES];
-    public static short[][] parityMove = { {1, 0, 1, 1, 0, 1, 1, 0, 1, 1, 0, 1, 1, 0, 1, 1, 0, 1},
-                                           {0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1, 0} };
-    public static short[][] FRtoBR_Move = new short[NUM_SLICE_EDGE_PERMUTATIONS][NUM_MOVES];
-    public static short[][] URFtoDLF_Move = new short[NUM_CORNER_PERMUTATIONS][NUM_MOVES];
-    public static short[][] URtoDF_Move = new short[NUM_EDGE_PERMUTATIONS_PHASE2][NUM_MOVES];
-    public static short[][] URtoUL_Move = new short[NUM_EDGE_MERGE_UR_UL][NUM_MOVES];
-    public static short[][] UBtoDF_Move = new short[NUM_EDGE_MERGE_UB_DF][NUM_MOVES];
-    public static short[][] MergeURtoULandUBtoDF = new short[336][336];
+    // Each table is one flat array with a stride of 18: the result of move m on coordinate c is at [18 * c + m].
+    // A short[N][18] would cost an extra row object and pointer load per lookup in the search loops.
+    // Always read them through getMove so the layout only lives in one place.
+    public static final Table twistMove = Table.ofShorts(NUM_CORNER_ORIENTATIONS * NUM_MOVES);
+    public static final Table flipMove = Table.ofShorts(NUM_EDGE_ORIENTATIONS * NUM_MOVES);
+    public static final Table parityMove = Table.of(new short[] {
+                                         1, 0, 1, 1, 0, 1, 1, 0, 1, 1, 0, 1, 1, 0, 1, 1, 0, 1,
+                                         0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1, 0 });
+    public static final Table FRtoBR_Move = Table.ofShorts(NUM_SLICE_EDGE_PERMUTATIONS * NUM_MOVES);
+    public static final Table URFtoDLF_Move = Table.ofShorts(NUM_CORNER_PERMUTATIONS * NUM_MOVES);
+    public static final Table URtoDF_Move = Table.ofShorts(NUM_EDGE_PERMUTATIONS_PHASE2 * NUM_MOVES);
+    public static final Table URtoUL_Move = Table.ofShorts(NUM_EDGE_MERGE_UR_UL * NUM_MOVES);
+    public static final Table UBtoDF_Move = Table.ofShorts(NUM_EDGE_MERGE_UB_DF * NUM_MOVES);
+    public static final Table MergeURtoULandUBtoDF = Table.ofShorts(336 * 336);
+
+    // Apply move mv (0..17) to a coordinate using one of the move tables above
+    public static int getMove(Table table, int coord, int mv) {
+        return table.getShort(NUM_MOVES * coord + mv);
+    }
+
+    // URtoDF from the two halves URtoUL and UBtoDF, only meaningful once we are in phase 2
+    public static int getMergedURtoDF(int URtoUL, int UBtoDF) {
+        return MergeURtoULandUBtoDF.getShort(336 * URtoUL + UBtoDF);
+    }
 
     // STATIC INITIALIZATION
-    // This runs once when the program starts to fill all the tables takes around 1-2 seconds
+    // This runs once when the program starts. Generating all the tables takes around 1-2 seconds,
+    // so we try the on-disk cache first (see TableStore), then the copy packaged into the jar by TableGenerator,
+    // and only generate when neither is there.
+    // With the shared backend the tables are not copied at all, we point straight into the mapped file.
     static {
+        String name = tableSetName(PACKED_PRUNING);
+        Path cache = TableStore.cachePath(name);
+        if (!(TableStore.SHARED && useSharedTables(TableStore.map(cache, cachedTables())))
+                && !TableStore.load(cache, cachedTables())) {
+            if (!TableStore.loadResource(name, cachedTables())) {
+                generateMoveTables();
+                generatePruningTables();
+            }
+            TableStore.save(cache, cachedTables());
+            // The first process on the host generated the tables, switch over to the file we just wrote so it is shared too
+            if (TableStore.SHARED) useSharedTables(TableStore.map(cache, cachedTables()));
+        }
+    }
+
+    // Cache file / resource name of the table set, byte or packed pruning layout
+    static String tableSetName(boolean packed) {
+        return packed ? "tables-packed" : "tables";
+    }
+
+    // Every generated table, in the order they are written to the cache file
+    static Object[] cachedTables() {
+        return new Object[] {
+            twistMove, flipMove, FRtoBR_Move, URFtoDLF_Move, URtoDF_Move, URtoUL_Move, UBtoDF_Move,
+            MergeURtoULandUBtoDF,
+            Slice_Twist_Prune, Slice_Flip_Prune, Slice_URFtoDLF_Parity_Prune, Slice_URtoDF_Parity_Prune
+        };
+    }
+
+    // Point every table at its view of the mapped cache file (same order as cachedTables)
+    static boolean useSharedTables(Buffer[] views) {
+        if (views == null) {
+            return false;
+        }
+        Object[] tables = cachedTables();
+        for (int t = 0; t < tables.length; t++) {
+            ((Table) tables[t]).share(views[t]);
+        }
+        return true;
+    }
+
+    static void generateMoveTables() {
         // GENERATE MOVE TABLES
         // We simulate moves on a temporary cube to fill the lookup tables.
         CubieCube cc = new CubieCube();
@@ -99,7 +181,7 @@ public class CoordCube {
             for (int m = 0; m < 6; m++) {
                 for (int k = 0; k < 3; k++) {
                     cc.multiplyCorner(CubieCube.moves[m]);
-                    twistMove[i][3 * m + k] = cc.getTwist();
+                    twistMove.shorts[NUM_MOVES * i + 3 * m + k] = cc.getTwist();
                 }
                 cc.multiplyCorner(CubieCube.moves[m]); // restore
             }
@@ -111,7 +193,7 @@ public class CoordCube {
             for (int m = 0; m < 6; m++) {
                 for (int k = 0; k < 3; k++) {
                     cc.multiplyEdge(CubieCube.moves[m]);
-                    flipMove[i][3 * m + k] = cc.getFlip();
+                    flipMove.shorts[NUM_MOVES * i + 3 * m + k] = cc.getFlip();
                 }
                 cc.multiplyEdge(CubieCube.moves[m]);
             }
@@ -123,7 +205,7 @@ public class CoordCube {
             for (int m = 0; m < 6; m++) {
                 for (int k = 0; k < 3; k++) {
                     cc.multiplyEdge(CubieCube.moves[m]);
-                    FRtoBR_Move[i][3 * m + k] = cc.getFRtoBR();
+                    FRtoBR_Move.shorts[NUM_MOVES * i + 3 * m + k] = cc.getFRtoBR();
                 }
                 cc.multiplyEdge(CubieCube.moves[m]);
             }
@@ -135,7 +217,7 @@ public class CoordCube {
             for (int m = 0; m < 6; m++) {
                 for (int k = 0; k < 3; k++) {
                     cc.multiplyCorner(CubieCube.moves[m]);
-                    URFtoDLF_Move[i][3 * m + k] = cc.getURFtoDLF();
+                    URFtoDLF_Move.shorts[NUM_MOVES * i + 3 * m + k] = cc.getURFtoDLF();
                 }
                 cc.multiplyCorner(CubieCube.moves[m]);
             }
@@ -147,7 +229,7 @@ public class CoordCube {
             for (int m = 0; m < 6; m++) {
                 for (int k = 0; k < 3; k++) {
                     cc.multiplyEdge(CubieCube.moves[m]);
-                    URtoDF_Move[i][3 * m + k] = (short) cc.getURtoDF();
+                    URtoDF_Move.shorts[NUM_MOVES * i + 3 * m + k] = (short) cc.getURtoDF();
                 }
                 cc.multiplyEdge(CubieCube.moves[m]);
             }
@@ -159,7 +241,7 @@ public class CoordCube {
             for (int m = 0; m < 6; m++) {
                 for (int k = 0; k < 3; k++) {
                     cc.multiplyEdge(CubieCube.moves[m]);
-                    URtoUL_Move[i][3 * m + k] = cc.getURtoUL();
+                    URtoUL_Move.shorts[NUM_MOVES * i + 3 * m + k] = cc.getURtoUL();
                 }
                 cc.multiplyEdge(CubieCube.moves[m]);
             }
@@ -169,7 +251,7 @@ public class CoordCube {
             for (int m = 0; m < 6; m++) {
                 for (int k = 0; k < 3; k++) {
                     cc.multiplyEdge(CubieCube.moves[m]);
-                    UBtoDF_Move[i][3 * m + k] = cc.getUBtoDF();
+                    UBtoDF_Move.shorts[NUM_MOVES * i + 3 * m + k] = cc.getUBtoDF();
                 }
                 cc.multiplyEdge(CubieCube.moves[m]);
             }
@@ -178,115 +260,52 @@ public class CoordCube {
         // Merge Table
         for (short u = 0; u < 336; u++) {
             for (short v = 0; v < 336; v++) {
-                MergeURtoULandUBtoDF[u][v] = (short) CubieCube.getURtoDF(u, v);
+                MergeURtoULandUBtoDF.shorts[336 * u + v] = (short) CubieCube.getURtoDF(u, v);
             }
         }
+    }
 
+    static void generatePruningTables() {
         // GENERATE PRUNING TABLES with bfs backwards search 
         // We use Breadth-First Search to find the shortest distance from the solved state
         // to every other state in the coordinate graph.
         // Literally just open up to 18 around the current + 1 dist
-
-        // Phase 1: Twist Pruning
-        for(int i=0; i<Slice_Twist_Prune.length; i++) Slice_Twist_Prune[i] = -1; // -1 means unvisited
-        setPruning(Slice_Twist_Prune, 0, (byte)0);
-        int done = 1;
-        int depth = 0;
-        while(done < NUM_SLICE_POSITIONS_PHASE1 * NUM_CORNER_ORIENTATIONS) {
-            for(int i=0; i<NUM_SLICE_POSITIONS_PHASE1 * NUM_CORNER_ORIENTATIONS; i++) {
-                if(getPruning(Slice_Twist_Prune, i) == depth) {
-                    int twist = i / NUM_SLICE_POSITIONS_PHASE1;
-                    int slice = i % NUM_SLICE_POSITIONS_PHASE1;
-                    for(int j=0; j<NUM_MOVES; j++) {
-                        int newTwist = twistMove[twist][j];
-                        int newSlice = FRtoBR_Move[slice * 24][j] / 24;
-                        int idx = NUM_SLICE_POSITIONS_PHASE1 * newTwist + newSlice;
-                        if(getPruning(Slice_Twist_Prune, idx) == -1) {
-                            setPruning(Slice_Twist_Prune, idx, (byte)(depth + 1));
-                            done++;
-                        }
-                    }
-                }
-            }
-            depth++;
+        // The BFS itself lives in PruningTableBuilder, which runs the levels and the four tables in parallel.
+        // It always works on one byte per entry (packed writes from several threads would lose updates),
+        // so in packed mode we build into temporary arrays and pack them afterwards.
+        Table[] tables = { Slice_Twist_Prune, Slice_Flip_Prune, Slice_URFtoDLF_Parity_Prune, Slice_URtoDF_Parity_Prune };
+        byte[][] full = { tables[0].bytes, tables[1].bytes, tables[2].bytes, tables[3].bytes };
+        if (PACKED_PRUNING) {
+            full = new byte[][] {
+                new byte[NUM_SLICE_POSITIONS_PHASE1 * NUM_CORNER_ORIENTATIONS],
+                new byte[NUM_SLICE_POSITIONS_PHASE1 * NUM_EDGE_ORIENTATIONS],
+                new byte[NUM_SLICE_PERMUTATIONS_PHASE2 * NUM_CORNER_PERMUTATIONS * NUM_PARITIES],
+                new byte[NUM_SLICE_PERMUTATIONS_PHASE2 * NUM_EDGE_PERMUTATIONS_PHASE2 * NUM_PARITIES]
+            };
         }
 
-        // Phase 1: Flip Pruning
-        for(int i=0; i<Slice_Flip_Prune.length; i++) Slice_Flip_Prune[i] = -1;
-        setPruning(Slice_Flip_Prune, 0, (byte)0);
-        done = 1; depth = 0;
-        while(done < NUM_SLICE_POSITIONS_PHASE1 * NUM_EDGE_ORIENTATIONS) {
-            for(int i=0; i<NUM_SLICE_POSITIONS_PHASE1 * NUM_EDGE_ORIENTATIONS; i++) {
-                if(getPruning(Slice_Flip_Prune, i) == depth) {
-                    int flip = i / NUM_SLICE_POSITIONS_PHASE1;
-                    int slice = i % NUM_SLICE_POSITIONS_PHASE1;
-                    for(int j=0; j<NUM_MOVES; j++) {
-                        int newFlip = flipMove[flip][j];
-                        int newSlice = FRtoBR_Move[slice * 24][j] / 24;
-                        int idx = NUM_SLICE_POSITIONS_PHASE1 * newFlip + newSlice;
-                        if(getPruning(Slice_Flip_Prune, idx) == -1) {
-                            setPruning(Slice_Flip_Prune, idx, (byte)(depth + 1));
-                            done++;
-                        }
-                    }
-                }
-            }
-            depth++;
-        }
+        PruningTableBuilder.buildAll(
+            full, // Phase 1: Twist, Phase 1: Flip, Phase 2: Corner + Slice + Parity, Phase 2: Edge + Slice + Parity
+            new PruningTableBuilder.Graph[] {
+                new PruningTableBuilder.Phase1Graph(twistMove, FRtoBR_Move),
+                new PruningTableBuilder.Phase1Graph(flipMove, FRtoBR_Move),
+                new PruningTableBuilder.Phase2Graph(URFtoDLF_Move, FRtoBR_Move, parityMove),
+                new PruningTableBuilder.Phase2Graph(URtoDF_Move, FRtoBR_Move, parityMove)
+            });
 
-        // Phase 2: Corner + Slice + Parity Pruning
-        for(int i=0; i<Slice_URFtoDLF_Parity_Prune.length; i++) Slice_URFtoDLF_Parity_Prune[i] = -1;
-        setPruning(Slice_URFtoDLF_Parity_Prune, 0, (byte)0);
-        done = 1; depth = 0;
-        while(done < NUM_SLICE_PERMUTATIONS_PHASE2 * NUM_CORNER_PERMUTATIONS * NUM_PARITIES) {
-            for(int i=0; i<NUM_SLICE_PERMUTATIONS_PHASE2 * NUM_CORNER_PERMUTATIONS * NUM_PARITIES; i++) {
-                if(getPruning(Slice_URFtoDLF_Parity_Prune, i) == depth) {
-                    int parity = i % 2;
-                    int perm = (i / 2) / NUM_SLICE_PERMUTATIONS_PHASE2;
-                    int slice = (i / 2) % NUM_SLICE_PERMUTATIONS_PHASE2;
-                    for(int j=0; j<NUM_MOVES; j++) {
-                        // Skip moves not allowed in Phase 2
-                        if(j==3||j==5||j==6||j==8||j==12||j==14||j==15||j==17) continue; 
-                        
-                        int newSlice = FRtoBR_Move[slice][j];
-                        int newPerm = URFtoDLF_Move[perm][j];
-                        int newParity = parityMove[parity][j];
-                        int idx = (NUM_SLICE_PERMUTATIONS_PHASE2 * newPerm + newSlice) * 2 + newParity;
-                        if(getPruning(Slice_URFtoDLF_Parity_Prune, idx) == -1) {
-                            setPruning(Slice_URFtoDLF_Parity_Prune, idx, (byte)(depth + 1));
-                            done++;
-                        }
-                    }
-                }
+        if (PACKED_PRUNING) {
+            for (int t = 0; t < tables.length; t++) {
+                packPruning(full[t], tables[t].bytes);
             }
-            depth++;
         }
+    }
 
-        // Phase 2: Edge + Slice + Parity Pruning
-        for(int i=0; i<Slice_URtoDF_Parity_Prune.length; i++) Slice_URtoDF_Parity_Prune[i] = -1;
-        setPruning(Slice_URtoDF_Parity_Prune, 0, (byte)0);
-        done = 1; depth = 0;
-        while(done < NUM_SLICE_PERMUTATIONS_PHASE2 * NUM_EDGE_PERMUTATIONS_PHASE2 * NUM_PARITIES) {
-            for(int i=0; i<NUM_SLICE_PERMUTATIONS_PHASE2 * NUM_EDGE_PERMUTATIONS_PHASE2 * NUM_PARITIES; i++) {
-                if(getPruning(Slice_URtoDF_Parity_Prune, i) == depth) {
-                    int parity = i % 2;
-                    int perm = (i / 2) / NUM_SLICE_PERMUTATIONS_PHASE2;
-                    int slice = (i / 2) % NUM_SLICE_PERMUTATIONS_PHASE2;
-                    for(int j=0; j<NUM_MOVES; j++) {
-                        if(j==3||j==5||j==6||j==8||j==12||j==14||j==15||j==17) continue; 
-                        
-                        int newSlice = FRtoBR_Move[slice][j];
-                        int newPerm = URtoDF_Move[perm][j];
-                        int newParity = parityMove[parity][j];
-                        int idx = (NUM_SLICE_PERMUTATIONS_PHASE2 * newPerm + newSlice) * 2 + newParity;
-                        if(getPruning(Slice_URtoDF_Parity_Prune, idx) == -1) {
-                            setPruning(Slice_URtoDF_Parity_Prune, idx, (byte)(depth + 1));
-                            done++;
-                        }
-                    }
-                }
-            }
-            depth++;
+    // Nibble pack a one byte per entry pruning table into packed (the layout getPruning reads: even index in the low nibble)
+    static void packPruning(byte[] full, byte[] packed) {
+        Arrays.fill(packed, (byte) -1);
+        for (int i = 0; i < full.length; i++) {
+            int shift = (i & 1) << 2;
+            packed[i >> 1] = (byte) ((packed[i >> 1] & ~(0x0f << shift)) | ((full[i] & 0x0f) << shift));
         }
     }
-}
\ No newline at end of file
+}
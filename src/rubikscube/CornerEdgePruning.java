@@ -0,0 +1,209 @@
+package rubikscube;
+
+/*
+ * An extra phase 2 heuristic: the exact number of phase 2 moves needed to solve all 8 corners and all 8 U/D
+ * edges together, ignoring only the slice edges. The two CoordCube phase 2 tables each pair the slice with
+ * either 6 corners or 6 edges, so on their own they underestimate the long phase 2 tails a lot.
+ *
+ * Raw that would be 8! * 8! entries. Like the phase 1 table in FlipSliceTwistPruning the corner permutation is
+ * reduced by the 16 symmetries that keep the UD axis, which leaves 2768 classes, and the edges are moved into
+ * the class representative's frame: 2768 * 40320 = 111,605,760 entries. Nibble packed (same layout as the packed
+ * CoordCube tables, distances above 15 stored as 15, which still never overestimates) that is ~56 MB.
+ *
+ * The search never tracks the full permutations. In phase 2 the URFtoDLF coordinate and the corner parity pin
+ * down all 8 corners, and URtoDF plus the parity of the U/D edges (corner parity xor slice parity) pins down
+ * all 8 edges, so two small lookup tables turn the coordinates Search already has into a table index.
+ *
+ * Only built when -Drubikscube.phase2Table=true (see CoordCube.CORNER_EDGE_PRUNING), and cached on disk
+ * or loaded from the jar like the phase 1 table, since the BFS takes a while.
+ */
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class CornerEdgePruning {
+
+    public static final int NUM_CORNER_CLASS = 2768;
+    public static final int NUM_ENTRIES = NUM_CORNER_CLASS * CoordCube.NUM_URF_DLB;
+
+    // Nibble packed distances, indexed 40320 * corner class + URtoDB in the representative's frame
+    public static byte[] table = new byte[(NUM_ENTRIES + 1) / 2];
+
+    // [2 * URFtoDLF + parity]: (corner class << 4) | symmetry that takes the corners to the class representative
+    static char[] cornerClassSym = new char[2 * CoordCube.NUM_CORNER_PERMUTATIONS];
+    // [2 * URtoDF + parity of the U/D edges]: the URtoDB coordinate of those edges
+    static char[] URtoDB = new char[2 * CoordCube.NUM_EDGE_PERMUTATIONS_PHASE2];
+    // [16 * URtoDB + s]: URtoDB of S edges S^-1
+    static char[] URtoDBConj = new char[CoordCube.NUM_URF_DLB * Symmetry.NUM_SYM_D4h];
+
+    // Parity of the slice edge permutation for every phase 2 FRtoBR, built every time
+    static final byte[] sliceParity = new byte[CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2];
+
+    static {
+        CubieCube cc = new CubieCube();
+        for (int i = 0; i < CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2; i++) {
+            cc.setFRtoBR((short) i);
+            sliceParity[i] = (byte) cc.edgeParity();
+        }
+
+        Path cache = TableStore.cachePath("phase2-corner-edge");
+        if (!TableStore.load(cache, cachedTables())) {
+            if (!TableStore.loadResource("phase2-corner-edge", cachedTables())) {
+                generate();
+            }
+            TableStore.save(cache, cachedTables());
+        }
+    }
+
+    // Does nothing, but calling it runs the static initializer (see CoordCube.load)
+    static void load() {
+    }
+
+    static Object[] cachedTables() {
+        return new Object[] { table, cornerClassSym, URtoDB, URtoDBConj };
+    }
+
+    // Lower bound on the phase 2 distance of a position, from the coordinates Search keeps for phase 2
+    public static int distance(int URFtoDLF, int URtoDF, int FRtoBR, int parity) {
+        int classSym = cornerClassSym[2 * URFtoDLF + parity];
+        int edges = URtoDB[2 * URtoDF + (parity ^ sliceParity[FRtoBR])];
+        int index = CoordCube.NUM_URF_DLB * (classSym >> 4) + URtoDBConj[Symmetry.NUM_SYM_D4h * edges + (classSym & 15)];
+        return (table[index >> 1] >> ((index & 1) << 2)) & 0x0f;
+    }
+
+    static void generate() {
+        // Corner classes, the same way Symmetry builds the flipslice classes: the first unseen permutation
+        // becomes the representative and every S^-1 rep S joins its class with symmetry s
+        char[] classIdx = new char[CoordCube.NUM_URF_DLB];
+        byte[] classSym = new byte[CoordCube.NUM_URF_DLB];
+        char[] classRep = new char[NUM_CORNER_CLASS];
+        char[] selfSym = new char[NUM_CORNER_CLASS];
+        Arrays.fill(classIdx, Symmetry.INVALID);
+        CubieCube cc = new CubieCube();
+        int classes = 0;
+        for (int raw = 0; raw < CoordCube.NUM_URF_DLB; raw++) {
+            if (classIdx[raw] != Symmetry.INVALID) continue;
+            cc.setURFtoDLB(raw);
+            classIdx[raw] = (char) classes;
+            classRep[classes] = (char) raw;
+            for (int s = 0; s < Symmetry.NUM_SYM_D4h; s++) {
+                CubieCube ss = new CubieCube(Symmetry.symCube[Symmetry.invIdx[s]]);
+                ss.multiplyCorner(cc);
+                ss.multiplyCorner(Symmetry.symCube[s]);
+                int rawNew = ss.getURFtoDLB();
+                if (classIdx[rawNew] == Symmetry.INVALID) {
+                    classIdx[rawNew] = (char) classes;
+                    classSym[rawNew] = (byte) s;
+                }
+                if (rawNew == raw) {
+                    selfSym[classes] |= (char) (1 << s);
+                }
+            }
+            classes++;
+        }
+
+        // Phase 2 move tables for the full permutations (the other moves would take edges out of their layer)
+        CubieCube[] moves = new CubieCube[CoordCube.NUM_MOVES];
+        for (int m = 0; m < CoordCube.NUM_MOVES; m++) moves[m] = Symmetry.moveCube(m);
+        char[] cornerMove = new char[CoordCube.NUM_URF_DLB * CoordCube.NUM_MOVES];
+        char[] edgeMove = new char[CoordCube.NUM_URF_DLB * CoordCube.NUM_MOVES];
+        cc = new CubieCube();
+        for (int i = 0; i < CoordCube.NUM_URF_DLB; i++) {
+            for (int m = 0; m < CoordCube.NUM_MOVES; m++) {
+                if (PruningTableBuilder.NOT_PHASE2[m]) continue;
+                cc.setURFtoDLB(i);
+                cc.setURtoDB(i);
+                cc.multiply(moves[m]);
+                cornerMove[CoordCube.NUM_MOVES * i + m] = (char) cc.getURFtoDLB();
+                edgeMove[CoordCube.NUM_MOVES * i + m] = (char) cc.getURtoDB();
+            }
+        }
+
+        // The lookup tables used by distance()
+        for (int i = 0; i < CoordCube.NUM_URF_DLB; i++) {
+            cc = new CubieCube();
+            cc.setURFtoDLB(i);
+            cornerClassSym[2 * cc.getURFtoDLF() + cc.cornerParity()] = (char) (classIdx[i] << 4 | classSym[i]);
+            cc.setURtoDB(i);
+            URtoDB[2 * cc.getURtoDF() + cc.edgeParity()] = (char) i;
+            for (int s = 0; s < Symmetry.NUM_SYM_D4h; s++) {
+                CubieCube ss = new CubieCube(Symmetry.symCube[s]);
+                ss.multiplyEdge(cc);
+                ss.multiplyEdge(Symmetry.symCube[Symmetry.invIdx[s]]);
+                URtoDBConj[Symmetry.NUM_SYM_D4h * i + s] = (char) ss.getURtoDB();
+            }
+        }
+
+        byte[] full = new byte[NUM_ENTRIES];
+        PruningTableBuilder.build(full, new CornerEdgeGraph(cornerMove, edgeMove, classIdx, classSym, classRep, selfSym, URtoDBConj));
+
+        // The BFS only filled the smallest of the entries of a symmetric representative (see CornerEdgeGraph),
+        // copy its distance to the others so distance() can use whichever one it lands on
+        for (int c = 0; c < NUM_CORNER_CLASS; c++) {
+            if (selfSym[c] == 1) continue;
+            int base = CoordCube.NUM_URF_DLB * c;
+            for (int edges = 0; edges < CoordCube.NUM_URF_DLB; edges++) {
+                if (full[base + edges] != -1) continue;
+                for (int s = 1; s < Symmetry.NUM_SYM_D4h; s++) {
+                    if ((selfSym[c] >> s & 1) == 0) continue;
+                    byte d = full[base + URtoDBConj[Symmetry.NUM_SYM_D4h * edges + s]];
+                    if (d != -1) {
+                        full[base + edges] = d;
+                        break;
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            if (full[i] > 15) full[i] = 15;
+        }
+        CoordCube.packPruning(full, table);
+    }
+
+    // (corner class, URtoDB) graph over the phase 2 moves. Gets all its tables passed in, since it runs on
+    // PruningTableBuilder's worker threads while this class is still initialising.
+    // A symmetric representative has several entries for the same position, the edges conjugated by each of its
+    // self symmetries. The graph always goes to the smallest of them, so every position is exactly one node.
+    // Otherwise the backward BFS steps would miss neighbours that were only reached through another entry.
+    static class CornerEdgeGraph extends PruningTableBuilder.Graph {
+        final char[] cornerMove;
+        final char[] edgeMove;
+        final char[] classIdx;
+        final byte[] classSym;
+        final char[] classRep;
+        final char[] selfSym;
+        final char[] edgeConj;
+
+        CornerEdgeGraph(char[] cornerMove, char[] edgeMove, char[] classIdx, byte[] classSym, char[] classRep, char[] selfSym, char[] edgeConj) {
+            this.cornerMove = cornerMove;
+            this.edgeMove = edgeMove;
+            this.classIdx = classIdx;
+            this.classSym = classSym;
+            this.classRep = classRep;
+            this.selfSym = selfSym;
+            this.edgeConj = edgeConj;
+        }
+
+        int neighbours(int index, int[] out) {
+            int corners = classRep[index / CoordCube.NUM_URF_DLB];
+            int edges = index % CoordCube.NUM_URF_DLB;
+            int n = 0;
+            for (int m = 0; m < CoordCube.NUM_MOVES; m++) {
+                if (PruningTableBuilder.NOT_PHASE2[m]) continue;
+                int newCorners = cornerMove[CoordCube.NUM_MOVES * corners + m];
+                int newClass = classIdx[newCorners];
+                int newEdges = edgeConj[Symmetry.NUM_SYM_D4h * edgeMove[CoordCube.NUM_MOVES * edges + m] + classSym[newCorners]];
+                int sym = selfSym[newClass];
+                if (sym != 1) {
+                    int conj = Symmetry.NUM_SYM_D4h * newEdges;
+                    for (int s = 1; s < Symmetry.NUM_SYM_D4h; s++) {
+                        if ((sym >> s & 1) != 0) newEdges = Math.min(newEdges, edgeConj[conj + s]);
+                    }
+                }
+                out[n++] = CoordCube.NUM_URF_DLB * newClass + newEdges;
+            }
+            return n;
+        }
+    }
+}
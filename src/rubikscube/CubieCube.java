@@ -80,6 +80,14 @@ public class CubieCube {
         // Default constructor initializes a solved cube - already filled above.
     }
 
+    // Copy constructor so we can conjugate or multiply without touching the original
+    public CubieCube(CubieCube other) {
+        cornerPermutation = other.cornerPermutation.clone();
+        cornerOrientation = other.cornerOrientation.clone();
+        edgePermutation = other.edgePermutation.clone();
+        edgeOrientation = other.edgeOrientation.clone();
+    }
+
     // Math - Binomial Coefficient (n choose k)
     // Required for calculating the "rank" of a permutation.
     public static int binomial(int n, int k) {
@@ -152,10 +160,22 @@ public class CubieCube {
             newPerm[i] = cornerPermutation[j];
 
             // Composition of orientation (sum modulo 3)
+            // Orientations 3..5 only show up in the mirrored symmetry cubes (see Symmetry), where
+            // the twist is counted the other way round. For two normal cubes this is just (a + b) % 3.
             byte oriA = cornerOrientation[j];
             byte oriB = move.cornerOrientation[i];
-            
-            newOri[i] = (byte) ((oriA + oriB) % 3);
+            int ori;
+            if (oriA < 3 && oriB < 3) {
+                ori = (oriA + oriB) % 3;            // two regular cubes
+            } else if (oriA < 3) {
+                ori = 3 + (oriA + oriB) % 3;        // b is mirrored, so is the result
+            } else if (oriB < 3) {
+                ori = 3 + (oriA - oriB + 3) % 3;    // a is mirrored, so is the result
+            } else {
+                ori = (oriA - oriB + 3) % 3;        // both mirrored, the mirrors cancel out
+            }
+
+            newOri[i] = (byte) ori;
         }
         
         // Update state
@@ -182,6 +202,29 @@ public class CubieCube {
         System.arraycopy(newOri, 0, edgeOrientation, 0, 12);
     }
 
+    // Composition of the whole cube: corners and edges
+    public void multiply(CubieCube move) {
+        multiplyCorner(move);
+        multiplyEdge(move);
+    }
+
+    // The inverse cube: this * inverse() is the solved cube, so solving it solves this one backwards.
+    // Only for real cubes, the mirrored symmetry cubes have their own table in Symmetry.invIdx
+    public CubieCube inverse() {
+        CubieCube inv = new CubieCube();
+        for (int i = 0; i < 8; i++) {
+            int j = cornerPermutation[i].ordinal();
+            inv.cornerPermutation[j] = Corner.values()[i];
+            inv.cornerOrientation[j] = (byte) ((3 - cornerOrientation[i]) % 3);
+        }
+        for (int i = 0; i < 12; i++) {
+            int j = edgePermutation[i].ordinal();
+            inv.edgePermutation[j] = Edge.values()[i];
+            inv.edgeOrientation[j] = edgeOrientation[i];
+        }
+        return inv;
+    }
+
     /*
      * gets and sets
      * The following methods map the raw cubie state to integer coordinates used
@@ -355,6 +398,57 @@ public class CubieCube {
         }
     }
 
+    // Coordinate: permutation of all 8 corners (0..40319), only used by the optimal solver
+    public int getURFtoDLB() {
+        Corner[] perm = Arrays.copyOf(cornerPermutation, 8);
+        int b = 0;
+        for (int j = 7; j > 0; j--) {
+            int k = 0;
+            while (perm[j].ordinal() != j) {
+                rotateLeft(perm, 0, j);
+                k++;
+            }
+            b = (j + 1) * b + k;
+        }
+        return b;
+    }
+
+    public void setURFtoDLB(int idx) {
+        Corner[] perm = {URF, UFL, ULB, UBR, DFR, DLF, DBL, DRB};
+        for (int j = 1; j < 8; j++) {
+            int k = idx % (j + 1);
+            idx /= j + 1;
+            while (k-- > 0) rotateRight(perm, 0, j);
+        }
+        System.arraycopy(perm, 0, cornerPermutation, 0, 8);
+    }
+
+    // Coordinate: permutation of the 8 U and D layer edges (0..40319), only valid in phase 2 where they stay in
+    // their own layers. Used by the corner/edge phase 2 table (CornerEdgePruning)
+    public int getURtoDB() {
+        Edge[] perm = Arrays.copyOf(edgePermutation, 8);
+        int b = 0;
+        for (int j = 7; j > 0; j--) {
+            int k = 0;
+            while (perm[j].ordinal() != j) {
+                rotateLeft(perm, 0, j);
+                k++;
+            }
+            b = (j + 1) * b + k;
+        }
+        return b;
+    }
+
+    public void setURtoDB(int idx) {
+        Edge[] perm = {UR, UF, UL, UB, DR, DF, DL, DB};
+        for (int j = 1; j < 8; j++) {
+            int k = idx % (j + 1);
+            idx /= j + 1;
+            while (k-- > 0) rotateRight(perm, 0, j);
+        }
+        System.arraycopy(perm, 0, edgePermutation, 0, 8);
+    }
+
     // Coordinate: UR to DF Edges (Phase 2)
     public int getURtoDF() {
         int a = 0, x = 0;
@@ -0,0 +1,158 @@
+package rubikscube;
+
+/*
+ * The big phase 1 pruning table from Kociemba's reference implementation: one exact distance for every
+ * (flipslice class, twist) pair, 64430 * 2187 = 140,908,410 entries. Compared to taking the max of
+ * Slice_Flip_Prune and Slice_Twist_Prune this is the real phase 1 distance, so phase 1 prunes far more nodes.
+ *
+ * To keep it at ~35 MB every entry only stores the distance modulo 3 in 2 bits (16 entries per int,
+ * 3 means unvisited). That is enough during the search: one move changes the distance by at most 1,
+ * so knowing the parent's exact distance and the child's distance mod 3 pins down the child's exact distance.
+ * Only the start position needs a short walk down to the solved state to find its exact distance.
+ *
+ * The table is only built when -Drubikscube.phase1Table=true (see CoordCube.FLIPSLICE_TWIST_PRUNING),
+ * and then it is cached on disk like the other tables since generating it takes a while
+ * (or loaded from the jar, if TableGenerator packaged it).
+ */
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class FlipSliceTwistPruning {
+
+    public static final int NUM_ENTRIES = Symmetry.NUM_FLIPSLICE_CLASS * CoordCube.NUM_CORNER_ORIENTATIONS;
+
+    // 2 bits per entry, 16 entries per int
+    public static int[] table = new int[NUM_ENTRIES / 16 + 1];
+
+    // DISTANCE[3 * d + mod3] is the distance of a neighbour, given our exact distance d and its distance mod 3
+    static final int[] DISTANCE = new int[3 * 40];
+
+    static {
+        for (int d = 0; d < 40; d++) {
+            for (int mod3 = 0; mod3 < 3; mod3++) {
+                // the neighbour is at d - 1, d or d + 1, pick the one with the right remainder
+                DISTANCE[3 * d + mod3] = d + (mod3 - d % 3 + 4) % 3 - 1;
+            }
+        }
+
+        Path cache = TableStore.cachePath("phase1-flipslice-twist");
+        if (!TableStore.load(cache, table)) {
+            if (!TableStore.loadResource("phase1-flipslice-twist", table)) {
+                generate();
+            }
+            TableStore.save(cache, (Object) table);
+        }
+    }
+
+    // Does nothing, but calling it runs the static initializer (see CoordCube.load)
+    static void load() {
+    }
+
+    static int getDepth3(int index) {
+        return (table[index >> 4] >>> ((index & 15) << 1)) & 3;
+    }
+
+    static void setDepth3(int index, int value) {
+        int shift = (index & 15) << 1;
+        table[index >> 4] = (table[index >> 4] & ~(3 << shift)) | (value << shift);
+    }
+
+    // Table index of a raw phase 1 position: move it into its flipslice class representative's frame
+    public static int index(int flip, int slice, int twist) {
+        int raw = CoordCube.NUM_SLICE_POSITIONS_PHASE1 * flip + slice;
+        int classIdx = Symmetry.flipSliceClassIdx[raw];
+        int sym = Symmetry.flipSliceSym[raw];
+        return CoordCube.NUM_CORNER_ORIENTATIONS * classIdx + Symmetry.twistConj[Symmetry.NUM_SYM_D4h * twist + sym];
+    }
+
+    // Exact distance of a neighbour whose parent is at exact distance parentDistance
+    public static int nextDistance(int parentDistance, int flip, int slice, int twist) {
+        return DISTANCE[3 * parentDistance + getDepth3(index(flip, slice, twist))];
+    }
+
+    // Exact phase 1 distance of a position, found by always stepping to a neighbour one closer to H
+    public static int distance(int flip, int slice, int twist) {
+        int depth3 = getDepth3(index(flip, slice, twist));
+        int depth = 0;
+        while (flip != 0 || slice != 0 || twist != 0) {
+            if (depth3 == 0) depth3 = 3;
+            for (int m = 0; m < CoordCube.NUM_MOVES; m++) {
+                int newFlip = CoordCube.getMove(CoordCube.flipMove, flip, m);
+                int newSlice = CoordCube.getMove(CoordCube.FRtoBR_Move, slice * 24, m) / 24;
+                int newTwist = CoordCube.getMove(CoordCube.twistMove, twist, m);
+                if (getDepth3(index(newFlip, newSlice, newTwist)) == depth3 - 1) {
+                    depth++;
+                    depth3--;
+                    flip = newFlip;
+                    slice = newSlice;
+                    twist = newTwist;
+                    break;
+                }
+            }
+        }
+        return depth;
+    }
+
+    // BFS over (flipslice class, twist) storing depth mod 3.
+    // Early levels expand the entries found at the current depth. From depth 9 on most entries are already
+    // filled, so it is cheaper to go backwards: look at every unvisited entry and check whether one move
+    // leads to the current depth.
+    // A class representative can be symmetric, and then the same position has several (class, twist)
+    // entries that differ only in the conjugated twist. Those all get filled together.
+    static void generate() {
+        Arrays.fill(table, -1); // every entry 3 = unvisited
+        setDepth3(0, 0);
+        long done = 1;
+        int depth = 0;
+        boolean backwards = false;
+        while (done < NUM_ENTRIES) {
+            int depth3 = depth % 3;
+            if (depth == 9) backwards = true;
+
+            int idx = 0;
+            for (int classIdx = 0; classIdx < Symmetry.NUM_FLIPSLICE_CLASS; classIdx++) {
+                for (int twist = 0; twist < CoordCube.NUM_CORNER_ORIENTATIONS; twist++, idx++) {
+                    // Whole block of 16 still unvisited, nothing to expand here
+                    if (!backwards && (idx & 15) == 0 && table[idx >> 4] == -1 && twist < CoordCube.NUM_CORNER_ORIENTATIONS - 16) {
+                        twist += 15;
+                        idx += 15;
+                        continue;
+                    }
+
+                    if (getDepth3(idx) != (backwards ? 3 : depth3)) continue;
+
+                    for (int m = 0; m < CoordCube.NUM_MOVES; m++) {
+                        int symMove = Symmetry.flipSliceSymMove[CoordCube.NUM_MOVES * classIdx + m];
+                        int newClass = symMove >> 4;
+                        int sym = symMove & 15;
+                        int newTwist = Symmetry.twistConj[Symmetry.NUM_SYM_D4h * CoordCube.getMove(CoordCube.twistMove, twist, m) + sym];
+                        int newIdx = CoordCube.NUM_CORNER_ORIENTATIONS * newClass + newTwist;
+
+                        if (backwards) {
+                            if (getDepth3(newIdx) == depth3) {
+                                setDepth3(idx, (depth + 1) % 3);
+                                done++;
+                                break;
+                            }
+                        } else if (getDepth3(newIdx) == 3) {
+                            setDepth3(newIdx, (depth + 1) % 3);
+                            done++;
+                            int selfSym = Symmetry.flipSliceSelfSym[newClass];
+                            for (int s = 1; s < Symmetry.NUM_SYM_D4h; s++) {
+                                if ((selfSym >> s & 1) == 0) continue;
+                                int twistSym = Symmetry.twistConj[Symmetry.NUM_SYM_D4h * newTwist + s];
+                                int symIdx = CoordCube.NUM_CORNER_ORIENTATIONS * newClass + twistSym;
+                                if (getDepth3(symIdx) == 3) {
+                                    setDepth3(symIdx, (depth + 1) % 3);
+                                    done++;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            depth++;
+        }
+    }
+}
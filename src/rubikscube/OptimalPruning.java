@@ -0,0 +1,215 @@
+package rubikscube;
+
+/*
+ * Pattern databases for the optimal solver (OptimalSearch), following Korf's
+ * "Finding Optimal Solutions to Rubik's Cube Using Pattern Databases" (1997). Each one stores the exact
+ * number of moves needed to solve part of the cube:
+ *   corners:                      8! * 3^7   = 88,179,840 entries (permutation and twist of all 8 corners)
+ *   edges UR, UF, UL, UB, DR, DF: 12!/6! * 2^6 = 42,577,920 entries (where those 6 edges are and their flips)
+ *   edges DL, DB, FR, FL, BL, BR: the same for the other 6 edges
+ * Solving the whole cube takes at least as many moves as any of its parts, so the max of the three never
+ * overestimates and IDA* with it only finds optimal solutions.
+ *
+ * The tables are built with PruningTableBuilder (one byte per entry) and then nibble packed like the packed
+ * CoordCube tables, so they take ~86 MB. They are Table objects and go through TableStore, so they are cached
+ * on disk and work with the shared /dev/shm backend like everything else. Generating them takes a few minutes
+ * on a single core, and this class is only loaded once the optimal solver is actually used.
+ *
+ * Edge coordinate: the positions of the 6 tracked edges ranked as a partial permutation (first edge 12 choices,
+ * second 11, ...), times 64 for their 6 flip bits. The second set is stored with every position shifted by 6,
+ * so for both sets the solved state is index 0, which is where the BFS starts.
+ *
+ * Same trap as PruningTableBuilder: the BFS runs from this static initializer, so the graphs get everything
+ * they need passed in and never touch the static fields of this class from the worker threads.
+ */
+
+import java.nio.Buffer;
+import java.nio.file.Path;
+
+public class OptimalPruning {
+
+    public static final int NUM_CORNER_STATES = CoordCube.NUM_URF_DLB * CoordCube.NUM_CORNER_ORIENTATIONS;
+    public static final int NUM_EDGE_POSITIONS = 12 * 11 * 10 * 9 * 8 * 7;
+    public static final int NUM_EDGE_STATES = NUM_EDGE_POSITIONS * 64;
+
+    // Move tables, built every time since they only take a moment
+    public static final char[] URFtoDLB_Move = new char[CoordCube.NUM_URF_DLB * CoordCube.NUM_MOVES];
+    public static final EdgeGraph lowEdges = new EdgeGraph(0);  // UR, UF, UL, UB, DR, DF
+    public static final EdgeGraph highEdges = new EdgeGraph(6); // DL, DB, FR, FL, BL, BR
+
+    // Nibble packed pattern databases (even index in the low nibble)
+    public static final Table cornerPdb = Table.ofBytes((NUM_CORNER_STATES + 1) / 2);
+    public static final Table lowEdgePdb = Table.ofBytes((NUM_EDGE_STATES + 1) / 2);
+    public static final Table highEdgePdb = Table.ofBytes((NUM_EDGE_STATES + 1) / 2);
+
+    static {
+        CubieCube cc = new CubieCube();
+        for (int i = 0; i < CoordCube.NUM_URF_DLB; i++) {
+            cc.setURFtoDLB(i);
+            for (int m = 0; m < 6; m++) {
+                for (int k = 0; k < 3; k++) {
+                    cc.multiplyCorner(CubieCube.moves[m]);
+                    URFtoDLB_Move[CoordCube.NUM_MOVES * i + 3 * m + k] = (char) cc.getURFtoDLB();
+                }
+                cc.multiplyCorner(CubieCube.moves[m]); // restore
+            }
+        }
+
+        Path cache = TableStore.cachePath("optimal");
+        if (!(TableStore.SHARED && useSharedTables(TableStore.map(cache, cachedTables())))
+                && !TableStore.load(cache, cachedTables())) {
+            if (!TableStore.loadResource("optimal", cachedTables())) {
+                generate();
+            }
+            TableStore.save(cache, cachedTables());
+            if (TableStore.SHARED) useSharedTables(TableStore.map(cache, cachedTables()));
+        }
+    }
+
+    // Does nothing, but calling it runs the static initializer (see CoordCube.load)
+    static void load() {
+    }
+
+    static Object[] cachedTables() {
+        return new Object[] { cornerPdb, lowEdgePdb, highEdgePdb };
+    }
+
+    static boolean useSharedTables(Buffer[] views) {
+        if (views == null) {
+            return false;
+        }
+        Object[] tables = cachedTables();
+        for (int t = 0; t < tables.length; t++) {
+            ((Table) tables[t]).share(views[t]);
+        }
+        return true;
+    }
+
+    // One table at a time, so only one full size byte array is around at once
+    static void generate() {
+        byte[] full = new byte[NUM_CORNER_STATES];
+        PruningTableBuilder.build(full, new CornerGraph(URFtoDLB_Move, CoordCube.twistMove));
+        CoordCube.packPruning(full, cornerPdb.bytes);
+
+        full = new byte[NUM_EDGE_STATES];
+        PruningTableBuilder.build(full, lowEdges);
+        CoordCube.packPruning(full, lowEdgePdb.bytes);
+        PruningTableBuilder.build(full, highEdges);
+        CoordCube.packPruning(full, highEdgePdb.bytes);
+    }
+
+    public static int getDistance(Table pdb, int index) {
+        return (pdb.getByte(index >> 1) >> ((index & 1) << 2)) & 0x0f;
+    }
+
+    // Corners: indexed 2187 * URFtoDLB + twist
+    static class CornerGraph extends PruningTableBuilder.Graph {
+        final char[] URFtoDLB_Move;
+        final Table twistMove;
+
+        CornerGraph(char[] URFtoDLB_Move, Table twistMove) {
+            this.URFtoDLB_Move = URFtoDLB_Move;
+            this.twistMove = twistMove;
+        }
+
+        int neighbours(int index, int[] out) {
+            int perm = index / CoordCube.NUM_CORNER_ORIENTATIONS;
+            int twist = index % CoordCube.NUM_CORNER_ORIENTATIONS;
+            for (int m = 0; m < CoordCube.NUM_MOVES; m++) {
+                out[m] = CoordCube.NUM_CORNER_ORIENTATIONS * URFtoDLB_Move[CoordCube.NUM_MOVES * perm + m]
+                        + twistMove.getShort(CoordCube.NUM_MOVES * twist + m);
+            }
+            return CoordCube.NUM_MOVES;
+        }
+    }
+
+    // One set of 6 edges: edge k of the set is edge shift + k, and positions are stored shifted by shift as well
+    public static class EdgeGraph extends PruningTableBuilder.Graph {
+        final int shift;
+        // [12 * m + p]: where move m takes an edge at (shifted) position p, and 1 if it flips it
+        final byte[] positionMove = new byte[CoordCube.NUM_MOVES * 12];
+        final byte[] flipMove = new byte[CoordCube.NUM_MOVES * 12];
+        // neighbours() runs for every entry on every BFS level, so each worker thread reuses its own
+        // position arrays instead of allocating two per call: [0, 6) the entry's, [6, 12) the neighbour's
+        final ThreadLocal<int[]> scratch = ThreadLocal.withInitial(() -> new int[12]);
+
+        EdgeGraph(int shift) {
+            this.shift = shift;
+            CubieCube cc = new CubieCube();
+            for (int m = 0; m < 6; m++) {
+                for (int k = 0; k < 3; k++) {
+                    cc.multiplyEdge(CubieCube.moves[m]);
+                    // Starting from solved, the edge that was at position edgePermutation[i] is now at position i
+                    for (int i = 0; i < 12; i++) {
+                        int from = (cc.edgePermutation[i].ordinal() + 12 - shift) % 12;
+                        positionMove[12 * (3 * m + k) + from] = (byte) ((i + 12 - shift) % 12);
+                        flipMove[12 * (3 * m + k) + from] = cc.edgeOrientation[i];
+                    }
+                }
+                cc.multiplyEdge(CubieCube.moves[m]); // back to solved
+            }
+        }
+
+        // Index of the cube's 6 edges of this set
+        public int index(CubieCube cc) {
+            int[] pos = new int[6];
+            int flips = 0;
+            for (int i = 0; i < 12; i++) {
+                int k = cc.edgePermutation[i].ordinal() - shift;
+                if (k >= 0 && k < 6) {
+                    pos[k] = (i + 12 - shift) % 12;
+                    flips |= cc.edgeOrientation[i] << k;
+                }
+            }
+            return 64 * rank(pos) + flips;
+        }
+
+        // Rank 6 different positions (0..11) as a partial permutation, 0..665279
+        public static int rank(int[] pos) {
+            return rank(pos, 0);
+        }
+
+        // Same for the 6 positions from pos[offset] on
+        static int rank(int[] pos, int offset) {
+            int used = 0;
+            int rank = 0;
+            for (int k = 0; k < 6; k++) {
+                int p = pos[offset + k];
+                rank = rank * (12 - k) + p - Integer.bitCount(used & ((1 << p) - 1));
+                used |= 1 << p;
+            }
+            return rank;
+        }
+
+        static void unrank(int rank, int[] pos) {
+            for (int k = 5; k >= 0; k--) {
+                pos[k] = rank % (12 - k); // k-th free position, counting from 0
+                rank /= 12 - k;
+            }
+            int used = 0;
+            for (int k = 0; k < 6; k++) {
+                int p = 0;
+                for (int free = pos[k]; ; p++) {
+                    if ((used & (1 << p)) == 0 && free-- == 0) break;
+                }
+                pos[k] = p;
+                used |= 1 << p;
+            }
+        }
+
+        int neighbours(int index, int[] out) {
+            int[] pos = scratch.get();
+            unrank(index >> 6, pos);
+            int flips = index & 63;
+            for (int m = 0; m < CoordCube.NUM_MOVES; m++) {
+                int newFlips = flips;
+                for (int k = 0; k < 6; k++) {
+                    pos[6 + k] = positionMove[12 * m + pos[k]];
+                    newFlips ^= flipMove[12 * m + pos[k]] << k;
+                }
+                out[m] = 64 * rank(pos, 6) + newFlips;
+            }
+            return CoordCube.NUM_MOVES;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package rubikscube;
+
+/*
+ * Optimal solver: Korf's IDA* over the whole cube, with the pattern databases in OptimalPruning as the heuristic.
+ * Unlike Search (two-phase, which just finds a short solution fast) every solution this returns has the fewest
+ * possible face turns. That costs a lot more time: scrambles of 15 moves or so take seconds, random cubes
+ * (usually 17-18 moves optimal) can take hours, so this is only meant for offline work.
+ *
+ * Each IDA* iteration is split on the first two moves into ~240 tasks on a ForkJoinPool. Every path shorter
+ * than the current bound was already ruled out by the earlier iterations, so any solution found in this iteration
+ * is optimal. The first task to find one wins and the others stop at their next check.
+ *
+ * Solutions use the same format as Search (U, UU, UUU, ...). Like Search it stops at a System.nanoTime() deadline
+ * ("Error 8") or when its CancellationToken is cancelled ("Error 9").
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class OptimalSearch {
+
+    // God's number is 20, so no optimal solution is longer
+    static final int MAX_LENGTH = 20;
+
+    // Load the pattern databases with this class, so building them never counts against a deadline (see Search)
+    static {
+        OptimalPruning.load();
+    }
+
+    // timeOut in seconds
+    public static String solution(CubieCube CC, long timeOut) {
+        return solution(CC, timeOut, ForkJoinPool.commonPool());
+    }
+
+    public static String solution(CubieCube CC, long timeOut, ForkJoinPool pool) {
+        return solution(CC, Search.deadlineAfter(timeOut), new CancellationToken(), pool);
+    }
+
+    public static String solution(CubieCube CC, long deadlineNanos, CancellationToken token) {
+        return solution(CC, deadlineNanos, token, ForkJoinPool.commonPool());
+    }
+
+    // Stops at an absolute System.nanoTime() deadline or as soon as the token is cancelled. The workers check
+    // both every Search.CHECK_INTERVAL nodes.
+    public static String solution(CubieCube CC, long deadlineNanos, CancellationToken token, ForkJoinPool pool) {
+        int s;
+        if ((s = CC.verify()) != 0)
+            return "Error " + Math.abs(s);
+
+        AtomicReference<String> found = new AtomicReference<>();
+
+        Worker root = new Worker(CC, new int[0], 0, found, deadlineNanos, token);
+        for (int bound = root.heuristic(0); bound <= MAX_LENGTH; bound++) {
+            if (bound < 2) {
+                // Too short to split on two moves
+                root.bound = bound;
+                root.compute();
+            } else {
+                List<ForkJoinTask<?>> tasks = new ArrayList<>();
+                for (int m1 = 0; m1 < CoordCube.NUM_MOVES; m1++) {
+                    for (int m2 = 0; m2 < CoordCube.NUM_MOVES; m2++) {
+                        if (!redundant(m1 / 3, m2 / 3)) {
+                            tasks.add(pool.submit(new Worker(CC, new int[] {m1, m2}, bound, found, deadlineNanos, token)));
+                        }
+                    }
+                }
+                for (ForkJoinTask<?> task : tasks) task.join();
+            }
+            if (found.get() != null) return found.get();
+            if (token.isCancelled()) return "Error 9";
+            if (System.nanoTime() - deadlineNanos > 0) return "Error 8";
+        }
+        return "Error 7"; // can't happen for a valid cube
+    }
+
+    // Same face twice in a row, or the opposite faces in the wrong order (D U is the same as U D)
+    static boolean redundant(int previousAxis, int axis) {
+        return axis == previousAxis || axis == previousAxis - 3;
+    }
+
+    static String toString(int[] moves, int length) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            char face = "URFDLB".charAt(moves[i] / 3);
+            for (int k = moves[i] % 3; k >= 0; k--) s.append(face);
+        }
+        return s.toString();
+    }
+
+    // Depth first search below one prefix of moves, for one bound.
+    // The state at every depth is kept in arrays: the corner coordinates and the (shifted) positions and
+    // flip bits of both edge sets, so going back up the tree costs nothing.
+    @SuppressWarnings("serial")
+    static class Worker extends RecursiveAction {
+        final int[] prefix;
+        final AtomicReference<String> found;
+        final long deadline;
+        final CancellationToken token;
+        int bound;
+
+        final int[] moves = new int[MAX_LENGTH + 1];
+        final int[] cornerPerm = new int[MAX_LENGTH + 1];
+        final int[] twist = new int[MAX_LENGTH + 1];
+        final int[][] lowPos = new int[MAX_LENGTH + 1][6];
+        final int[][] highPos = new int[MAX_LENGTH + 1][6];
+        final int[] lowFlips = new int[MAX_LENGTH + 1];
+        final int[] highFlips = new int[MAX_LENGTH + 1];
+        long nodes;
+
+        final OptimalPruning.EdgeGraph low = OptimalPruning.lowEdges;
+        final OptimalPruning.EdgeGraph high = OptimalPruning.highEdges;
+
+        Worker(CubieCube cc, int[] prefix, int bound, AtomicReference<String> found, long deadline, CancellationToken token) {
+            this.prefix = prefix;
+            this.bound = bound;
+            this.found = found;
+            this.deadline = deadline;
+            this.token = token;
+
+            cornerPerm[0] = cc.getURFtoDLB();
+            twist[0] = cc.getTwist();
+            for (int i = 0; i < 12; i++) {
+                int edge = cc.edgePermutation[i].ordinal();
+                int[] pos = edge < 6 ? lowPos[0] : highPos[0];
+                int k = edge % 6;
+                pos[k] = (i + 12 - (edge < 6 ? 0 : 6)) % 12;
+                if (edge < 6) lowFlips[0] |= cc.edgeOrientation[i] << k;
+                else highFlips[0] |= cc.edgeOrientation[i] << k;
+            }
+        }
+
+        // Max of the three pattern databases for the state at depth d
+        int heuristic(int d) {
+            int h = OptimalPruning.getDistance(OptimalPruning.cornerPdb, CoordCube.NUM_CORNER_ORIENTATIONS * cornerPerm[d] + twist[d]);
+            h = Math.max(h, OptimalPruning.getDistance(OptimalPruning.lowEdgePdb, 64 * OptimalPruning.EdgeGraph.rank(lowPos[d]) + lowFlips[d]));
+            return Math.max(h, OptimalPruning.getDistance(OptimalPruning.highEdgePdb, 64 * OptimalPruning.EdgeGraph.rank(highPos[d]) + highFlips[d]));
+        }
+
+        // State at depth d + 1 from the state at depth d and move m
+        void apply(int d, int m) {
+            moves[d] = m;
+            cornerPerm[d + 1] = OptimalPruning.URFtoDLB_Move[CoordCube.NUM_MOVES * cornerPerm[d] + m];
+            twist[d + 1] = CoordCube.getMove(CoordCube.twistMove, twist[d], m);
+            int lf = lowFlips[d], hf = highFlips[d];
+            for (int k = 0; k < 6; k++) {
+                int p = lowPos[d][k];
+                lowPos[d + 1][k] = low.positionMove[12 * m + p];
+                lf ^= low.flipMove[12 * m + p] << k;
+                p = highPos[d][k];
+                highPos[d + 1][k] = high.positionMove[12 * m + p];
+                hf ^= high.flipMove[12 * m + p] << k;
+            }
+            lowFlips[d + 1] = lf;
+            highFlips[d + 1] = hf;
+        }
+
+        boolean search(int d, int previousAxis) {
+            int h = heuristic(d);
+            if (h == 0) {
+                // All corners and both edge sets are solved, so the cube is
+                found.compareAndSet(null, OptimalSearch.toString(moves, d));
+                return true;
+            }
+            if (d + h > bound) return false;
+            if ((++nodes & (Search.CHECK_INTERVAL - 1)) == 0 && stopRequested()) return true;
+
+            for (int axis = 0; axis < 6; axis++) {
+                if (redundant(previousAxis, axis)) continue;
+                for (int power = 0; power < 3; power++) {
+                    apply(d, 3 * axis + power);
+                    if (search(d + 1, axis)) return true;
+                }
+            }
+            return false;
+        }
+
+        // Another task found a solution, the token was cancelled or the deadline passed
+        boolean stopRequested() {
+            return found.get() != null || token.isCancelled() || System.nanoTime() - deadline > 0;
+        }
+
+        protected void compute() {
+            // The tasks still queued behind a stop would otherwise each search CHECK_INTERVAL nodes first
+            if (stopRequested()) return;
+            int previousAxis = -1;
+            for (int d = 0; d < prefix.length; d++) {
+                apply(d, prefix[d]);
+                previousAxis = prefix[d] / 3;
+            }
+            search(prefix.length, previousAxis);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package rubikscube;
+
+/*
+ * Parallel breadth first search for the CoordCube pruning tables.
+ * Each BFS level is split into chunks that run on the common ForkJoinPool, and the four tables
+ * are built at the same time since they don't depend on each other. See build() for how a level
+ * decides between expanding the frontier and searching backwards from the unvisited entries.
+ *
+ * Writes are race tolerant: two workers can only ever race on the same unvisited entry,
+ * and both of them write the same value (depth + 1). Byte array stores can't tear in Java,
+ * so the finished table is exactly the same as the one the old single threaded loop produced.
+ *
+ * Careful: this runs from the CoordCube static initializer, so nothing in here may touch
+ * CoordCube's static fields or methods. A worker thread doing that would block on the class
+ * initialisation that is waiting for it. That is why the graphs get their move tables passed in,
+ * and also why they index the flat move tables directly instead of going through CoordCube.getMove.
+ */
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+public class PruningTableBuilder {
+
+    // Levels are split until a chunk has at most this many entries
+    static final int CHUNK_SIZE = 1 << 14;
+
+    // Moves that are not allowed in phase 2 (U, D, R2, F2, L2 and B2 are the only ones left)
+    static final boolean[] NOT_PHASE2 = new boolean[CoordCube.NUM_MOVES];
+
+    static {
+        for (int m : new int[] {3, 5, 6, 8, 12, 14, 15, 17}) NOT_PHASE2[m] = true;
+    }
+
+    // The coordinate graph behind one pruning table: turns an index into the indices one move away
+    public abstract static class Graph {
+        // Fill out with the neighbours of index and return how many there are
+        abstract int neighbours(int index, int[] out);
+
+        // Fill out with the entries that have index as a neighbour, for the backward steps. The CoordCube tables
+        // allow every move together with its inverse, so for them that is just neighbours.
+        int predecessors(int index, int[] out) {
+            return neighbours(index, out);
+        }
+
+        // What the k-th move of neighbours (and of predecessors) costs, from 1 to maxCost(). A neighbour reached
+        // with a move of cost c from depth d is at depth d + c, unless something got there sooner.
+        int cost(int k) {
+            return 1;
+        }
+
+        int maxCost() {
+            return 1;
+        }
+    }
+
+    // Phase 1 tables: (orientation coordinate, slice position), indexed as 495 * orientation + slice
+    public static class Phase1Graph extends Graph {
+        final Table orientationMove;
+        final Table FRtoBR_Move;
+
+        public Phase1Graph(Table orientationMove, Table FRtoBR_Move) {
+            this.orientationMove = orientationMove;
+            this.FRtoBR_Move = FRtoBR_Move;
+        }
+
+        int neighbours(int index, int[] out) {
+            int orientation = index / CoordCube.NUM_SLICE_POSITIONS_PHASE1;
+            int slice = index % CoordCube.NUM_SLICE_POSITIONS_PHASE1;
+            for (int j = 0; j < CoordCube.NUM_MOVES; j++) {
+                int newOrientation = orientationMove.getShort(CoordCube.NUM_MOVES * orientation + j);
+                int newSlice = FRtoBR_Move.getShort(CoordCube.NUM_MOVES * slice * 24 + j) / 24;
+                out[j] = CoordCube.NUM_SLICE_POSITIONS_PHASE1 * newOrientation + newSlice;
+            }
+            return CoordCube.NUM_MOVES;
+        }
+    }
+
+    // Phase 2 tables: (permutation coordinate, slice permutation, parity), indexed as (24 * perm + slice) * 2 + parity
+    public static class Phase2Graph extends Graph {
+        final Table permutationMove;
+        final Table FRtoBR_Move;
+        final Table parityMove;
+
+        public Phase2Graph(Table permutationMove, Table FRtoBR_Move, Table parityMove) {
+            this.permutationMove = permutationMove;
+            this.FRtoBR_Move = FRtoBR_Move;
+            this.parityMove = parityMove;
+        }
+
+        int neighbours(int index, int[] out) {
+            int parity = index % 2;
+            int perm = (index / 2) / CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2;
+            int slice = (index / 2) % CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2;
+            int n = 0;
+            for (int j = 0; j < CoordCube.NUM_MOVES; j++) {
+                if (NOT_PHASE2[j]) continue;
+
+                int newSlice = FRtoBR_Move.getShort(CoordCube.NUM_MOVES * slice + j);
+                int newPerm = permutationMove.getShort(CoordCube.NUM_MOVES * perm + j);
+                int newParity = parityMove.getShort(CoordCube.NUM_MOVES * parity + j);
+                out[n++] = (CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2 * newPerm + newSlice) * 2 + newParity;
+            }
+            return n;
+        }
+    }
+
+    // Build all the tables at once. tables[i] is filled from graphs[i].
+    public static void buildAll(byte[][] tables, Graph[] graphs) {
+        RecursiveAction[] builds = new RecursiveAction[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            byte[] table = tables[i];
+            Graph graph = graphs[i];
+            builds[i] = new RecursiveAction() {
+                protected void compute() {
+                    build(table, graph);
+                }
+            };
+        }
+        ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+            protected void compute() {
+                ForkJoinTask.invokeAll(builds);
+            }
+        });
+    }
+
+    // BFS from the solved state (index 0). -1 means unvisited.
+    // The current frontier (entries at the current depth) is kept as a bitset, so a level never has to scan
+    // the whole table looking for "== depth". Each level picks the cheaper direction:
+    //   forward:  expand every frontier entry and claim its unvisited neighbours (good while the frontier is small)
+    //   backward: go over every unvisited entry and check if one move reaches the frontier (good once most entries are filled)
+    // Both give exactly the same distances as the plain level by level scan.
+    // With moves that cost more than 1 (see Graph.cost) the last maxCost() frontiers are kept: depth + 1 is
+    // everything a move of cost c reaches from depth + 1 - c.
+    public static void build(byte[] table, Graph graph) {
+        int words = (table.length + 63) >>> 6;
+        Arrays.fill(table, (byte) -1);
+        table[0] = 0;
+
+        // frontiers[c - 1] holds the entries at depth + 1 - c
+        int maxCost = graph.maxCost();
+        long[][] frontiers = new long[maxCost][words];
+        long[] frontierSizes = new long[maxCost];
+        frontiers[0][0] = 1L;
+        frontierSizes[0] = 1;
+        long frontierSize = 1;
+        long unvisitedCount = table.length - 1;
+        long[] unvisited = null; // only kept up to date while we are searching backwards
+
+        for (int depth = 0; frontierSize > 0 && unvisitedCount > 0; depth++) {
+            long[] next = new long[words];
+            long found;
+            if (frontierSize <= unvisitedCount) {
+                found = new Forward(table, graph, depth, frontiers, next, 0, words).invoke();
+                unvisited = null;
+            } else {
+                if (unvisited == null) unvisited = unvisitedSet(table);
+                found = new Backward(table, graph, depth, frontiers, next, unvisited, 0, words).invoke();
+            }
+            System.arraycopy(frontiers, 0, frontiers, 1, maxCost - 1);
+            System.arraycopy(frontierSizes, 0, frontierSizes, 1, maxCost - 1);
+            frontiers[0] = next;
+            frontierSizes[0] = found;
+            frontierSize = 0;
+            for (long size : frontierSizes) frontierSize += size;
+            unvisitedCount -= found;
+        }
+    }
+
+    // Bitset of the entries that are still -1
+    static long[] unvisitedSet(byte[] table) {
+        long[] set = new long[(table.length + 63) >>> 6];
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] == -1) set[i >>> 6] |= 1L << i;
+        }
+        return set;
+    }
+
+    // Atomic OR into the next frontier, forward workers can claim neighbours anywhere in the table
+    static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // Chunks are whole words of the bitsets, so backward workers own every bit (and table entry) they write
+    static final int CHUNK_WORDS = CHUNK_SIZE / 64;
+
+    // Forward step over the frontier words [fromWord, toWord). Returns how many entries it set to depth + 1.
+    // Two workers can see the same unvisited neighbour and both write depth + 1 into the table (that race is harmless),
+    // but only the one whose atomic OR actually sets the frontier bit counts it, so the count is exact.
+    @SuppressWarnings("serial")
+    static class Forward extends RecursiveTask<Long> {
+        final byte[] table;
+        final Graph graph;
+        final int depth;
+        final long[][] frontiers;
+        final long[] next;
+        final int fromWord;
+        final int toWord;
+
+        Forward(byte[] table, Graph graph, int depth, long[][] frontiers, long[] next, int fromWord, int toWord) {
+            this.table = table;
+            this.graph = graph;
+            this.depth = depth;
+            this.frontiers = frontiers;
+            this.next = next;
+            this.fromWord = fromWord;
+            this.toWord = toWord;
+        }
+
+        protected Long compute() {
+            if (toWord - fromWord > CHUNK_WORDS) {
+                int mid = (fromWord + toWord) >>> 1;
+                Forward left = new Forward(table, graph, depth, frontiers, next, fromWord, mid);
+                left.fork();
+                long right = new Forward(table, graph, depth, frontiers, next, mid, toWord).compute();
+                return left.join() + right;
+            }
+
+            int[] neighbours = new int[CoordCube.NUM_MOVES];
+            long found = 0;
+            for (int w = fromWord; w < toWord; w++) {
+                for (int cost = 1; cost <= frontiers.length; cost++) {
+                    for (long bits = frontiers[cost - 1][w]; bits != 0; bits &= bits - 1) {
+                        int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                        int n = graph.neighbours(i, neighbours);
+                        for (int k = 0; k < n; k++) {
+                            int j = neighbours[k];
+                            if (table[j] == -1 && graph.cost(k) == cost) {
+                                table[j] = (byte) (depth + 1);
+                                long mask = 1L << j;
+                                if (((long) LONGS.getAndBitwiseOr(next, j >>> 6, mask) & mask) == 0) found++;
+                            }
+                        }
+                    }
+                }
+            }
+            return found;
+        }
+    }
+
+    // Backward step over the unvisited words [fromWord, toWord): an unvisited entry is at depth + 1
+    // exactly when one of its predecessors is in the frontier its move cost says (see Graph.predecessors).
+    @SuppressWarnings("serial")
+    static class Backward extends RecursiveTask<Long> {
+        final byte[] table;
+        final Graph graph;
+        final int depth;
+        final long[][] frontiers;
+        final long[] next;
+        final long[] unvisited;
+        final int fromWord;
+        final int toWord;
+
+        Backward(byte[] table, Graph graph, int depth, long[][] frontiers, long[] next, long[] unvisited, int fromWord, int toWord) {
+            this.table = table;
+            this.graph = graph;
+            this.depth = depth;
+            this.frontiers = frontiers;
+            this.next = next;
+            this.unvisited = unvisited;
+            this.fromWord = fromWord;
+            this.toWord = toWord;
+        }
+
+        protected Long compute() {
+            if (toWord - fromWord > CHUNK_WORDS) {
+                int mid = (fromWord + toWord) >>> 1;
+                Backward left = new Backward(table, graph, depth, frontiers, next, unvisited, fromWord, mid);
+                left.fork();
+                long right = new Backward(table, graph, depth, frontiers, next, unvisited, mid, toWord).compute();
+                return left.join() + right;
+            }
+
+            int[] neighbours = new int[CoordCube.NUM_MOVES];
+            long found = 0;
+            for (int w = fromWord; w < toWord; w++) {
+                for (long bits = unvisited[w]; bits != 0; bits &= bits - 1) {
+                    long bit = bits & -bits;
+                    int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    int n = graph.predecessors(i, neighbours);
+                    for (int k = 0; k < n; k++) {
+                        int j = neighbours[k];
+                        if ((frontiers[graph.cost(k) - 1][j >>> 6] & (1L << j)) != 0) {
+                            table[i] = (byte) (depth + 1);
+                            next[w] |= bit;
+                            unvisited[w] &= ~bit;
+                            found++;
+                            break;
+                        }
+                    }
+                }
+            }
+            return found;
+        }
+    }
+}
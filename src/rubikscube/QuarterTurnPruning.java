@@ -0,0 +1,122 @@
+package rubikscube;
+
+/*
+ * The four CoordCube pruning tables again, but counting what a solution string costs instead of face turns.
+ * Search.solutionToString writes F as "F", F2 as "FF" and F' as "FFF", so the cost of a move is its power, or
+ * equivalently the number of clockwise quarter turns it is made of. QuarterTurnSearch uses these.
+ *
+ * Counted like that the BFS only has the 6 clockwise quarter turns to work with, and those have no inverse
+ * in the move set, so the graphs here run the other way round: the BFS walks anticlockwise turns out from the
+ * solved state, which gives the number of clockwise ones back to it. Phase 2 can't split a half turn into
+ * two quarter turns (the one in between is not in H), so there R2, F2, L2 and B2 are moves of cost 2.
+ * PruningTableBuilder handles both (see Graph.predecessors and Graph.cost).
+ *
+ * One byte per entry, about 4 MB together. The largest distances are well above 15, so no nibble packing.
+ * Loaded the first time QuarterTurnSearch is used, and cached on disk like everything else.
+ */
+
+import java.nio.file.Path;
+
+public class QuarterTurnPruning {
+
+    // Same shapes and indexing as the CoordCube tables of the same name
+    public static final byte[] Slice_Twist_Prune = new byte[CoordCube.NUM_SLICE_POSITIONS_PHASE1 * CoordCube.NUM_CORNER_ORIENTATIONS];
+    public static final byte[] Slice_Flip_Prune = new byte[CoordCube.NUM_SLICE_POSITIONS_PHASE1 * CoordCube.NUM_EDGE_ORIENTATIONS];
+    public static final byte[] Slice_URFtoDLF_Parity_Prune = new byte[CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2 * CoordCube.NUM_CORNER_PERMUTATIONS * CoordCube.NUM_PARITIES];
+    public static final byte[] Slice_URtoDF_Parity_Prune = new byte[CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2 * CoordCube.NUM_EDGE_PERMUTATIONS_PHASE2 * CoordCube.NUM_PARITIES];
+
+    static {
+        Path cache = TableStore.cachePath("quarter-turn");
+        if (!TableStore.load(cache, cachedTables())) {
+            if (!TableStore.loadResource("quarter-turn", cachedTables())) {
+                PruningTableBuilder.buildAll(
+                    new byte[][] { Slice_Twist_Prune, Slice_Flip_Prune, Slice_URFtoDLF_Parity_Prune, Slice_URtoDF_Parity_Prune },
+                    new PruningTableBuilder.Graph[] {
+                        new Phase1Graph(CoordCube.twistMove, CoordCube.FRtoBR_Move),
+                        new Phase1Graph(CoordCube.flipMove, CoordCube.FRtoBR_Move),
+                        new Phase2Graph(CoordCube.URFtoDLF_Move, CoordCube.FRtoBR_Move, CoordCube.parityMove),
+                        new Phase2Graph(CoordCube.URtoDF_Move, CoordCube.FRtoBR_Move, CoordCube.parityMove)
+                    });
+            }
+            TableStore.save(cache, cachedTables());
+        }
+    }
+
+    // Does nothing, but calling it runs the static initializer (see CoordCube.load)
+    static void load() {
+    }
+
+    static Object[] cachedTables() {
+        return new Object[] { Slice_Twist_Prune, Slice_Flip_Prune, Slice_URFtoDLF_Parity_Prune, Slice_URtoDF_Parity_Prune };
+    }
+
+    // Phase 1: anticlockwise quarter turns forward, clockwise ones backward, all of cost 1
+    static class Phase1Graph extends PruningTableBuilder.Phase1Graph {
+
+        Phase1Graph(Table orientationMove, Table FRtoBR_Move) {
+            super(orientationMove, FRtoBR_Move);
+        }
+
+        int neighbours(int index, int[] out) {
+            return turns(index, 2, out);
+        }
+
+        int predecessors(int index, int[] out) {
+            return turns(index, 0, out);
+        }
+
+        // The 6 moves of the given power - 1
+        int turns(int index, int power, int[] out) {
+            int orientation = index / CoordCube.NUM_SLICE_POSITIONS_PHASE1;
+            int slice = index % CoordCube.NUM_SLICE_POSITIONS_PHASE1;
+            for (int axis = 0; axis < 6; axis++) {
+                int m = 3 * axis + power;
+                int newOrientation = orientationMove.getShort(CoordCube.NUM_MOVES * orientation + m);
+                int newSlice = FRtoBR_Move.getShort(CoordCube.NUM_MOVES * slice * 24 + m) / 24;
+                out[axis] = CoordCube.NUM_SLICE_POSITIONS_PHASE1 * newOrientation + newSlice;
+            }
+            return 6;
+        }
+    }
+
+    // Phase 2: U' and D' (cost 1) forward, U and D backward, and the half turns (cost 2) both ways
+    static class Phase2Graph extends PruningTableBuilder.Phase2Graph {
+        static final int[] FORWARD = {2, 11, 4, 7, 13, 16};
+        static final int[] BACKWARD = {0, 9, 4, 7, 13, 16};
+        static final int[] COST = {1, 1, 2, 2, 2, 2};
+
+        Phase2Graph(Table permutationMove, Table FRtoBR_Move, Table parityMove) {
+            super(permutationMove, FRtoBR_Move, parityMove);
+        }
+
+        int neighbours(int index, int[] out) {
+            return turns(index, FORWARD, out);
+        }
+
+        int predecessors(int index, int[] out) {
+            return turns(index, BACKWARD, out);
+        }
+
+        int cost(int k) {
+            return COST[k];
+        }
+
+        int maxCost() {
+            return 2;
+        }
+
+        int turns(int index, int[] moves, int[] out) {
+            int parity = index % 2;
+            int perm = (index / 2) / CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2;
+            int slice = (index / 2) % CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2;
+            for (int k = 0; k < moves.length; k++) {
+                int m = moves[k];
+                int newSlice = FRtoBR_Move.getShort(CoordCube.NUM_MOVES * slice + m);
+                int newPerm = permutationMove.getShort(CoordCube.NUM_MOVES * perm + m);
+                int newParity = parityMove.getShort(CoordCube.NUM_MOVES * parity + m);
+                out[k] = (CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2 * newPerm + newSlice) * 2 + newParity;
+            }
+            return moves.length;
+        }
+    }
+}
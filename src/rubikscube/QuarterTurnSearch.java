@@ -0,0 +1,182 @@
+package rubikscube;
+
+/*
+ * Two-phase search for the shortest solution string rather than the fewest face turns. The executors turn
+ * whatever Search.solutionToString writes, F2 as "FF" and F' as "FFF", so a move really costs its power:
+ * U is 1, U2 is 2 and U' is 3. Search counts all three as 1 and happily returns "FFF" where "F" plus a few
+ * more face turns would have been shorter.
+ *
+ * Both phases are IDA* with that cost instead of the depth (a weighted IDA*: the bound goes up by one cost unit
+ * per iteration), pruned with the QuarterTurnPruning tables, which count the same cost. Like the anytime mode of
+ * Search it does not stop at the first solution: every solution found lowers the length limit to one below its
+ * own, and the search carries on until either the phase 1 bound reaches the best length (nothing shorter is
+ * left in the two-phase search space) or the time is up. Solutions use the same format as Search.
+ */
+
+public class QuarterTurnSearch {
+
+    // A random cube takes about 20 face turns, which is about 30 to 35 characters
+    static final int MAX_LENGTH = 60;
+
+    // Any move can come first
+    static final int[] FIRST_MOVES = Search.successors(-1, 0, true);
+
+    // Load the tables with this class, before solution() works out its deadline, as Search does
+    static {
+        CoordCube.load();
+        QuarterTurnPruning.load();
+    }
+
+    // Returns the shortest string of at most maxLength characters found within timeOutMillis, "Error 7" if
+    // there is none, "Error 8" if the time ran out before the first one, or the Search error for a bad cube.
+    public static String solution(CubieCube CC, int maxLength, long timeOutMillis) {
+        int s;
+        if ((s = CC.verify()) != 0)
+            return "Error " + Math.abs(s);
+        QuarterTurnSearch search = new QuarterTurnSearch(CC, Math.min(maxLength, MAX_LENGTH), System.nanoTime() + timeOutMillis * 1_000_000);
+        search.run();
+        if (search.best != null)
+            return search.best;
+        return search.stopped ? "Error 8" : "Error 7";
+    }
+
+    final int[] moves = new int[MAX_LENGTH + 1];
+
+    // Phase 1 coordinates by depth
+    final int[] flip = new int[MAX_LENGTH + 1];
+    final int[] twist = new int[MAX_LENGTH + 1];
+    final int[] slice = new int[MAX_LENGTH + 1];
+
+    // Phase 2 coordinates by depth, set up from the start position and the phase 1 moves when phase 2 starts
+    final int[] URFtoDLF = new int[MAX_LENGTH + 1];
+    final int[] URtoDF = new int[MAX_LENGTH + 1];
+    final int[] FRtoBR = new int[MAX_LENGTH + 1];
+    final int[] parity = new int[MAX_LENGTH + 1];
+    final CoordCube start;
+
+    final long deadline;
+    long nodes;
+    boolean stopped;
+
+    String best;
+    int bestLength; // one more than the longest string still worth finding
+
+    QuarterTurnSearch(CubieCube CC, int maxLength, long deadline) {
+        this.deadline = deadline;
+        bestLength = maxLength + 1;
+        start = new CoordCube(CC);
+        flip[0] = start.flip;
+        twist[0] = start.twist;
+        slice[0] = start.FRtoBR / 24;
+    }
+
+    void run() {
+        for (int bound = phase1Distance(0); bound < bestLength && !stopped; bound++) {
+            phase1(0, 0, bound, -1);
+        }
+    }
+
+    int phase1Distance(int n) {
+        return Math.max(
+            QuarterTurnPruning.Slice_Twist_Prune[CoordCube.NUM_SLICE_POSITIONS_PHASE1 * twist[n] + slice[n]],
+            QuarterTurnPruning.Slice_Flip_Prune[CoordCube.NUM_SLICE_POSITIONS_PHASE1 * flip[n] + slice[n]]);
+    }
+
+    int phase2Distance(int n) {
+        return Math.max(
+            QuarterTurnPruning.Slice_URFtoDLF_Parity_Prune[(CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2 * URFtoDLF[n] + FRtoBR[n]) * 2 + parity[n]],
+            QuarterTurnPruning.Slice_URtoDF_Parity_Prune[(CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2 * URtoDF[n] + FRtoBR[n]) * 2 + parity[n]]);
+    }
+
+    // Same check interval as Search
+    boolean timeUp() {
+        if ((++nodes & (Search.CHECK_INTERVAL - 1)) == 0 && System.nanoTime() - deadline > 0)
+            stopped = true;
+        return stopped;
+    }
+
+    // Phase 1 below depth n, which cost cost so far. Paths of exactly bound that end in H go on to phase 2,
+    // shorter ones were already tried by an earlier iteration.
+    void phase1(int n, int cost, int bound, int previousAxis) {
+        if (timeUp())
+            return;
+        int h = phase1Distance(n);
+        if (h == 0 && cost == bound) {
+            phase2Start(n, cost);
+            return;
+        }
+        if (cost + h > bound)
+            return;
+
+        int[] next = previousAxis < 0 ? FIRST_MOVES : Search.PHASE1_NEXT[previousAxis];
+        for (int mv : next) {
+            int c = cost + mv % 3 + 1;
+            if (c > bound)
+                continue;
+            moves[n] = mv;
+            flip[n + 1] = CoordCube.getMove(CoordCube.flipMove, flip[n], mv);
+            twist[n + 1] = CoordCube.getMove(CoordCube.twistMove, twist[n], mv);
+            slice[n + 1] = CoordCube.getMove(CoordCube.FRtoBR_Move, slice[n] * 24, mv) / 24;
+            phase1(n + 1, c, bound, mv / 3);
+            if (stopped || bound >= bestLength)
+                return;
+        }
+    }
+
+    // The phase 1 path moves[0..n) reached H at cost cost1: find the cheapest phase 2 that still beats the best
+    void phase2Start(int n, int cost1) {
+        // Phase 1 paths are short, so just replay them from the start position
+        int URtoUL = start.URtoUL, UBtoDF = start.UBtoDF;
+        URFtoDLF[0] = start.URFtoDLF;
+        FRtoBR[0] = start.FRtoBR;
+        parity[0] = start.parity;
+        for (int i = 0; i < n; i++) {
+            URFtoDLF[i + 1] = CoordCube.getMove(CoordCube.URFtoDLF_Move, URFtoDLF[i], moves[i]);
+            FRtoBR[i + 1] = CoordCube.getMove(CoordCube.FRtoBR_Move, FRtoBR[i], moves[i]);
+            parity[i + 1] = CoordCube.getMove(CoordCube.parityMove, parity[i], moves[i]);
+            URtoUL = CoordCube.getMove(CoordCube.URtoUL_Move, URtoUL, moves[i]);
+            UBtoDF = CoordCube.getMove(CoordCube.UBtoDF_Move, UBtoDF, moves[i]);
+        }
+        URtoDF[n] = CoordCube.getMergedURtoDF(URtoUL, UBtoDF);
+
+        int budget = Math.min(bestLength - 1 - cost1, MAX_LENGTH - n);
+        int previousAxis = n == 0 ? -1 : moves[n - 1] / 3;
+        for (int bound = phase2Distance(n); bound <= budget; bound++) {
+            int length = phase2(n, 0, bound, previousAxis);
+            if (length >= 0) {
+                best = OptimalSearch.toString(moves, length);
+                bestLength = best.length();
+                return;
+            }
+            if (stopped)
+                return;
+        }
+    }
+
+    // Phase 2 below depth n. Returns the total number of moves of a solution of cost at most bound, or -1.
+    int phase2(int n, int cost, int bound, int previousAxis) {
+        if (timeUp())
+            return -1;
+        int h = phase2Distance(n);
+        if (h == 0)
+            return n;
+        if (cost + h > bound)
+            return -1;
+
+        int[] next = previousAxis < 0 ? Search.PHASE2_FIRST : Search.PHASE2_NEXT[previousAxis];
+        for (int mv : next) {
+            int c = cost + mv % 3 + 1;
+            if (c > bound)
+                continue;
+            moves[n] = mv;
+            URFtoDLF[n + 1] = CoordCube.getMove(CoordCube.URFtoDLF_Move, URFtoDLF[n], mv);
+            FRtoBR[n + 1] = CoordCube.getMove(CoordCube.FRtoBR_Move, FRtoBR[n], mv);
+            parity[n + 1] = CoordCube.getMove(CoordCube.parityMove, parity[n], mv);
+            URtoDF[n + 1] = CoordCube.getMove(CoordCube.URtoDF_Move, URtoDF[n], mv);
+            int length = phase2(n + 1, c, bound, mv / 3);
+            if (length >= 0 || stopped)
+                return length;
+        }
+        return -1;
+    }
+}
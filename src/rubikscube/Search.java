@@ -7,41 +7,73 @@ package rubikscube;
  */
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // Class Search implements the Two-Phase-Algorithm
 // I like to think of this as the brain it runs two-stage IDA star searches
 // and uses a bunch of precomputed tables in CoordCube to make things fast.
 public class Search {
 
-    // SEARCH TRACE ARRAYS The Manual Stack
-    // Increased size to [40] to prevent ArrayIndexOutOfBoundsException during lookaheads was initially fine at 31 but some solves go deeper
-    // Standard Kociemba solves can briefly exceed depth 30 during phase transitions.
-    
-    // The face being turned (0=U, 1=R, 2=F, 3=D, 4=L, 5=B)
-    static int[] axis = new int[40]; 
-    // The amount of turn (1=90, 2=180, 3=270)
-    static int[] power = new int[40];
-
-    // Phase 1 Coordinates State at each depth
-    static int[] flip = new int[40];   // edge flip coordinate
-    static int[] twist = new int[40];  // corner twist coordinate
-    static int[] slice = new int[40];  // slice coordinate (coarse edge grouping)
-
-    // Phase 2 Coordinates State at each depth
-    static int[] parity = new int[40];   // corner/edge parity
-    static int[] URFtoDLF = new int[40]; // URF-to-DLF corner index
-    static int[] FRtoBR = new int[40];   // FR-to-BR edge index
-    static int[] URtoUL = new int[40];   // UR-to-UL edge index
-    static int[] UBtoDF = new int[40];   // UB-to-DF edge index
-    static int[] URtoDF = new int[40];   // merged UR-to-DF index used for pruning
-
-    // IDA star heuristic estimates from pruning tables in CoordCube
-    static int[] minDistPhase1 = new int[40];
-    static int[] minDistPhase2 = new int[40];
+    // The search state (the manual DFS stack) lives in a SearchContext, so solution() is thread safe.
+    // Every call checks a context out of the pool and hands it back when it is done.
+
+    // SUCCESSOR MOVES
+    // The moves the search tries after a move on a given face, in the order it tries them (move m is face m / 3
+    // turned m % 3 + 1 times). They leave out the same face twice in a row and opposite faces in the wrong
+    // order (D U is the same as U D), so both DFS loops just walk these arrays instead of working that out per node.
+    // PHASE1_AFTER_FIRST is for the second move, which always starts at R, after any first move.
+    // Phase 2 only turns U and D by quarter turns and the other faces by half turns.
+    static final int[][] PHASE1_NEXT = new int[6][];
+    static final int[][] PHASE1_AFTER_FIRST = new int[6][];
+    static final int[] PHASE1_FIRST = successors(-1, 0, true);
+    static final int[] PHASE2_FIRST = successors(-1, 0, false);
+    static final int[][] PHASE2_NEXT = new int[6][];
+
+    static {
+        for (int previousAxis = 0; previousAxis < 6; previousAxis++) {
+            PHASE1_NEXT[previousAxis] = successors(previousAxis, previousAxis == 0 || previousAxis == 3 ? 1 : 0, true);
+            PHASE1_AFTER_FIRST[previousAxis] = successors(previousAxis, 1, true);
+            PHASE2_NEXT[previousAxis] = successors(previousAxis, previousAxis == 0 || previousAxis == 3 ? 1 : 0, false);
+        }
+    }
+
+    // With -Drubikscube.orderedPhase1=true phase 1 tries the children of a node closest to H first (see closestFirst)
+    // instead of in face order. That finds the first solution sooner, but usually a different one.
+    static final boolean ORDERED_PHASE1 = Boolean.getBoolean("rubikscube.orderedPhase1");
+
+    // Moves from face firstAxis on. The first face is taken as is, the ones after it skip the redundant faces
+    // (none with previousAxis -1). phase1 allows every power, otherwise only U, D and half turns.
+    static int[] successors(int previousAxis, int firstAxis, boolean phase1) {
+        List<Integer> moves = new ArrayList<>();
+        for (int axis = firstAxis; axis < 6; axis++) {
+            if (axis != firstAxis && (axis == previousAxis || axis == previousAxis - 3))
+                continue;
+            for (int power = 1; power <= 3; power++) {
+                if (phase1 || axis == 0 || axis == 3 || power == 2)
+                    moves.add(3 * axis + power - 1);
+            }
+        }
+        return moves.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // Load the CoordCube tables together with this class, before any call works out its deadline,
+    // so the one time table setup never eats into the time budget of the first solve.
+    // The same goes for the optional tables: on a cold cache those take far longer than any time limit.
+    static {
+        CoordCube.load();
+        if (CoordCube.FLIPSLICE_TWIST_PRUNING) FlipSliceTwistPruning.load();
+        if (CoordCube.CORNER_EDGE_PRUNING) CornerEdgePruning.load();
+    }
 
     // generate the solution string from the axis/power arrays
     // also translate F' -> FFF and F2 -> FF to keep a simple move alphabet
-    static String solutionToString(int length) {
+    static String solutionToString(SearchContext ctx, int length) {
+        int[] axis = ctx.axis;
+        int[] power = ctx.power;
         StringBuilder s = new StringBuilder();
         for (int i = 0; i < length; i++) {
             switch (power[i]) {
@@ -83,8 +115,227 @@ public class Search {
     // Compute the solver string for a given cubie-level cube state
     // maxDepth caps the total allowed moves phase1 + phase2
     // timeOut in seconds limits the total runtime safety valve
+    // Safe to call from several threads at once, every call gets its own SearchContext
     public static String solution(CubieCube CC, int maxDepth, long timeOut) throws IOException, IncorrectFormatException {
+        return solution(CC, maxDepth, deadlineAfter(timeOut), new CancellationToken());
+    }
+
+    // Same, but stops at an absolute System.nanoTime() deadline ("Error 8") or as soon as the token is
+    // cancelled ("Error 9"). Both are checked every CHECK_INTERVAL nodes in phase 1 and in phase 2.
+    public static String solution(CubieCube CC, int maxDepth, long deadlineNanos, CancellationToken token) {
+        SearchContext ctx = SearchContext.acquire();
+        try {
+            return solution(ctx, CC, maxDepth, deadlineNanos, token, null, 0, null, null, 0);
+        } finally {
+            SearchContext.release(ctx);
+        }
+    }
+
+    // Same as solution(CC, maxDepth, deadlineNanos, token), plus the counters of the solve (see SearchResult)
+    public static SearchResult solve(CubieCube CC, int maxDepth, long deadlineNanos, CancellationToken token) {
+        SearchContext ctx = SearchContext.acquire();
+        try {
+            long start = System.nanoTime();
+            String solution = solution(ctx, CC, maxDepth, deadlineNanos, token, null, 0, null, null, 0);
+            return new SearchResult(solution, ctx, System.nanoTime() - start);
+        } finally {
+            SearchContext.release(ctx);
+        }
+    }
+
+    // How many nodes (phase 1 and phase 2 together) the search expands between two looks at the clock and the token.
+    // A node is well under a microsecond, so this stops a search within a fraction of a millisecond.
+    static final int CHECK_INTERVAL = 1024;
+
+    static long deadlineAfter(long timeOutSeconds) {
+        return System.nanoTime() + timeOutSeconds * 1_000_000_000L;
+    }
+
+    // True once the deadline has passed or the token is cancelled, only really checked every CHECK_INTERVAL calls
+    static boolean stopRequested(SearchContext ctx) {
+        if ((++ctx.nodes & (CHECK_INTERVAL - 1)) != 0)
+            return false;
+        return ctx.token.isCancelled() || System.nanoTime() - ctx.deadline > 0;
+    }
+
+    // PARALLEL MODE
+    // A single hard cube only keeps one core busy, so this splits phase 1 between the workers of a ForkJoinPool,
+    // the same way OptimalSearch splits its iterations: every phase 1 depth from SPLIT_DEPTH on is searched by one
+    // task per pair of first two moves (about 230 of them, each with its own SearchContext), so every core keeps
+    // stealing work until the depth is done. The depths still go up one at a time, as in the sequential search.
+    // The tasks share one atomically updated bound, the length of the solution (maxDepth + 1 while there is none).
+    // The first task to land a solution within maxDepth lowers it and wins. Every other task reads the bound at
+    // each phase 1 node and gives up as soon as it is lowered, and the tasks that have not started yet don't run.
+    // The solution can differ from the sequential one, since the moves of a depth are no longer tried in order.
+    public static String solutionParallel(CubieCube CC, int maxDepth, long timeOut) {
+        return solutionParallel(CC, maxDepth, timeOut, ForkJoinPool.commonPool());
+    }
+
+    public static String solutionParallel(CubieCube CC, int maxDepth, long timeOut, ForkJoinPool pool) {
+        return solutionParallel(CC, maxDepth, deadlineAfter(timeOut), new CancellationToken(), pool);
+    }
+
+    public static String solutionParallel(CubieCube CC, int maxDepth, long deadlineNanos, CancellationToken token, ForkJoinPool pool) {
         int s;
+        if ((s = CC.verify()) != 0)
+            return "Error " + Math.abs(s);
+
+        AtomicInteger bound = new AtomicInteger(maxDepth + 1);
+        CancellationToken workers = new CancellationToken(token); // cancelled by the winner
+        for (int depthPhase1 = 1; depthPhase1 <= maxDepth; depthPhase1++) {
+            String result;
+            if (depthPhase1 < SPLIT_DEPTH) {
+                // Too small to be worth splitting
+                SearchContext ctx = SearchContext.acquire();
+                try {
+                    result = solution(ctx, CC, maxDepth, deadlineNanos, workers, null, depthPhase1, bound, null, 0);
+                } finally {
+                    SearchContext.release(ctx);
+                }
+            } else {
+                List<int[]> prefixes = new ArrayList<>();
+                for (int first : PHASE1_FIRST) {
+                    for (int second : PHASE1_AFTER_FIRST[first / 3]) prefixes.add(new int[] {first, second});
+                }
+                String[] results = new String[prefixes.size()];
+                List<ForkJoinTask<?>> tasks = new ArrayList<>();
+                for (int i = 0; i < results.length; i++) {
+                    int t = i, depth = depthPhase1;
+                    tasks.add(pool.submit(() -> {
+                        if (bound.get() <= maxDepth) return; // another task already won
+                        SearchContext ctx = SearchContext.acquire();
+                        try {
+                            results[t] = solution(ctx, CC, maxDepth, deadlineNanos, workers, prefixes.get(t), depth, bound, null, 0);
+                        } finally {
+                            SearchContext.release(ctx);
+                        }
+                    }));
+                }
+                for (ForkJoinTask<?> task : tasks) task.join();
+                result = firstResult(results);
+            }
+            if (!result.equals("Error 7"))
+                return result;
+        }
+        return "Error 7";
+    }
+
+    // Phase 1 depths below this are searched by a single task. Their trees only have a few thousand nodes.
+    static final int SPLIT_DEPTH = 5;
+
+    // At most one worker won the bound, otherwise report a cancel, then a timeout, over an exhausted depth.
+    // Workers that did not run or gave up to the winner have null.
+    static String firstResult(String[] results) {
+        String error = "Error 7";
+        for (String result : results) {
+            if (result == null) continue;
+            if (!result.startsWith("Error")) return result;
+            if (result.equals("Error 9") || (result.equals("Error 8") && !error.equals("Error 9"))) error = result;
+        }
+        return error;
+    }
+
+    // RACE MODE
+    // How long the two-phase search takes depends a lot on which axis it treats as UD, and an unlucky cube
+    // is often an easy one seen from another side. So this solves 6 versions of the same cube at once:
+    // the cube rotated onto each of the 3 axes (conjugated by the URF diagonal rotation, S C S^-1) and the
+    // inverse of each of those. Like the parallel mode they share one bound, so the first to find a solution
+    // within maxDepth wins and the other 5 give up at their next phase 1 node. The winning solution is then
+    // turned back into a solution of the original cube, see fromRacer.
+    public static String solutionRace(CubieCube CC, int maxDepth, long timeOut) {
+        return solutionRace(CC, maxDepth, timeOut, ForkJoinPool.commonPool());
+    }
+
+    public static String solutionRace(CubieCube CC, int maxDepth, long timeOut, ForkJoinPool pool) {
+        return solutionRace(CC, maxDepth, deadlineAfter(timeOut), new CancellationToken(), pool);
+    }
+
+    public static String solutionRace(CubieCube CC, int maxDepth, long deadlineNanos, CancellationToken token, ForkJoinPool pool) {
+        int s;
+        if ((s = CC.verify()) != 0)
+            return "Error " + Math.abs(s);
+
+        AtomicInteger bound = new AtomicInteger(maxDepth + 1);
+        CancellationToken racers = new CancellationToken(token); // cancelled by the winner
+        String[] results = new String[6];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int racer = 0; racer < 6; racer++) {
+            int r = racer;
+            tasks.add(pool.submit(() -> {
+                // symCube[16] is the URF rotation, symCube[32] the same rotation twice
+                int sym = 16 * (r % 3);
+                CubieCube cube = new CubieCube(Symmetry.symCube[sym]);
+                cube.multiply(r < 3 ? CC : CC.inverse());
+                cube.multiply(Symmetry.symCube[Symmetry.invIdx[sym]]);
+
+                SearchContext ctx = SearchContext.acquire();
+                try {
+                    String result = solution(ctx, cube, maxDepth, deadlineNanos, racers, null, 0, bound, null, 0);
+                    results[r] = result == null || result.startsWith("Error") ? result : fromRacer(result, sym, r >= 3);
+                } finally {
+                    SearchContext.release(ctx);
+                }
+            }));
+        }
+        for (ForkJoinTask<?> task : tasks) task.join();
+        return firstResult(results);
+    }
+
+    // A solution of S D S^-1 is a sequence m1..mn of moves, so S^-1 m1 S .. S^-1 mn S solves D.
+    // If D is the inverse of the cube, D * solution is solved, so the solution equals the cube,
+    // and the cube is solved by the solution backwards with every move turned the other way.
+    static String fromRacer(String solution, int sym, boolean inverse) {
+        List<Integer> moves = new ArrayList<>();
+        for (int i = 0; i < solution.length(); ) {
+            int j = i;
+            while (j < solution.length() && solution.charAt(j) == solution.charAt(i)) j++;
+            int turns = (j - i) % 4;
+            if (turns != 0) {
+                int m = 3 * "URFDLB".indexOf(solution.charAt(i)) + turns - 1;
+                moves.add(Symmetry.moveConj[CoordCube.NUM_MOVES * Symmetry.invIdx[sym] + m]);
+            }
+            i = j;
+        }
+
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < moves.size(); i++) {
+            int m = inverse ? moves.get(moves.size() - 1 - i) : moves.get(i);
+            int turns = inverse ? 3 - m % 3 : m % 3 + 1;
+            for (int k = 0; k < turns; k++) s.append("URFDLB".charAt(m / 3));
+        }
+        return s.toString();
+    }
+
+    // ANYTIME MODE
+    // The normal search stops at the first solution within maxDepth. This one keeps going: every time it finds
+    // a solution it hands it to the listener, lowers maxDepth to one less than its length and carries on with
+    // the phase 1 search right where it was. It stops once a solution of at most targetLength moves is found,
+    // the search space under the bound is exhausted, or timeOutMillis have passed.
+    // Returns the shortest solution found, or the usual error string if there was none.
+    // (Lengths count face turns, so UU is one move.)
+    public static String solutionAnytime(CubieCube CC, int maxDepth, int targetLength, long timeOutMillis, SolutionListener listener) {
+        SearchContext ctx = SearchContext.acquire();
+        try {
+            return solution(ctx, CC, maxDepth, System.nanoTime() + timeOutMillis * 1_000_000, new CancellationToken(), null, 0, null, listener, targetLength);
+        } finally {
+            SearchContext.release(ctx);
+        }
+    }
+
+    // With a prefix (parallel mode) phase 1 only tries paths that start with those two moves.
+    // With onlyDepth > 0 only that phase 1 depth is searched, otherwise the depths go up from 1 as usual.
+    // With a bound (parallel modes) a solution is only returned by the worker that lowered the bound to its length.
+    // The others return null as soon as they see it lowered. The winner also cancels the token the workers share,
+    // which stops them in phase 2.
+    // With a listener (anytime mode) every improvement goes to the listener and the search continues below it.
+    static String solution(SearchContext ctx, CubieCube CC, int maxDepth, long deadlineNanos, CancellationToken token,
+                           int[] prefix, int onlyDepth, AtomicInteger bound, SolutionListener listener, int targetLength) {
+        int[] axis = ctx.axis, power = ctx.power;
+        int[] flip = ctx.flip, twist = ctx.twist, slice = ctx.slice;
+        int[] parity = ctx.parity, URFtoDLF = ctx.URFtoDLF, FRtoBR = ctx.FRtoBR, URtoUL = ctx.URtoUL, UBtoDF = ctx.UBtoDF;
+        int[] minDistPhase1 = ctx.minDistPhase1, distPhase1 = ctx.distPhase1;
+        int s;
+        String best = null; // anytime mode: shortest solution so far
 
         // Quick sanity check structure and parity.
         if ((s = CC.verify()) != 0)
@@ -104,175 +355,249 @@ public class Search {
         FRtoBR[0] = c.FRtoBR;
         URtoUL[0] = c.URtoUL;
         UBtoDF[0] = c.UBtoDF;
+        if (CoordCube.FLIPSLICE_TWIST_PRUNING)
+            distPhase1[0] = FlipSliceTwistPruning.distance(flip[0], slice[0], twist[0]);
+        ctx.cornersValid = 0;
+        ctx.edgesValid = 0;
 
-        // just ensures IDA star doesn't instantly fail for depth=1
-        minDistPhase1[1] = 1;
         int mv, n = 0;
-        boolean busy = false;
-        int depthPhase1 = 1;
+        int depthPhase1 = onlyDepth > 0 ? onlyDepth : 1;
+        int[][] moveList = ctx.moveList;
+        int[] moveIndex = ctx.moveIndex;
+
+        ctx.deadline = deadlineNanos;
+        ctx.token = token;
+        ctx.nodes = 0;
+        ctx.resetCounters();
+        ctx.phase1Depth = depthPhase1;
+        ctx.phase2Cache.clear();
 
-        long tStart = System.currentTimeMillis();
+        // The first move is any move, or the first one of the prefix
+        moveList[0] = prefix == null ? PHASE1_FIRST : new int[] {prefix[0]};
+        int[] secondMoves = prefix == null ? null : new int[] {prefix[1]};
+        if (ORDERED_PHASE1) moveList[0] = closestFirst(ctx, 0, moveList[0], Integer.MAX_VALUE);
+        moveIndex[0] = 0;
 
         // Main loop for phase-1
         // We iterate over increasing depthPhase1 until we find a depth where phase-2 can finish.
+        // Every pass handles the node reached by move moveList[n][moveIndex[n]] at depth n, then picks the next one.
         do {
-            do {
-                if ((depthPhase1 - n > minDistPhase1[n + 1]) && !busy) {
-
-                    // initialize next move: alternate axes to avoid repeating same face immediately
-                    if (n == 0 || axis[n] == 0 || axis[n] == 3) {
-                        axis[++n] = 1; 
-                    } else {
-                        axis[++n] = 0; 
-                    }
-                    power[n] = 1; 
-                } else if (++power[n] > 3) {
-                    // power overflow so increment axis
-                    do {
-                        if (++axis[n] > 5) {
-                            // timeout check in s
-                            if (System.currentTimeMillis() - tStart > timeOut * 1000)
-                                return "Error 8";
-
-                            if (n == 0) {
-                                if (depthPhase1 >= maxDepth)
-                                    return "Error 7"; // depth exceeded
-                                else {
-                                    depthPhase1++;
-                                    axis[n] = 0;
-                                    power[n] = 1;
-                                    busy = false;
-                                    break;
-                                }
-                            } else {
-                                n--;
-                                busy = true;
-                                break;
-                            }
-                        } else {
-                            power[n] = 1;
-                            busy = false;
-                        }
-                    // Redundant move check - don't do U then U
-                    } while (n != 0 && (axis[n - 1] == axis[n] || axis[n - 1] - 3 == axis[n]));
-                } else
-                    busy = false;
-            } while (busy);
-
-            // compute new coordinates after appending the chosen move
-            mv = 3 * axis[n] + power[n] - 1;
-            flip[n + 1] = CoordCube.flipMove[flip[n]][mv];
-            twist[n + 1] = CoordCube.twistMove[twist[n]][mv];
-            slice[n + 1] = CoordCube.FRtoBR_Move[slice[n] * 24][mv] / 24;
-
-            // heuristic is combine flip and twist pruning values then take the max
-            minDistPhase1[n + 1] = Math.max(
-                    CoordCube.getPruning(CoordCube.Slice_Flip_Prune, CoordCube.NUM_SLICE_POSITIONS_PHASE1 * flip[n + 1] + slice[n + 1]),
-                    CoordCube.getPruning(CoordCube.Slice_Twist_Prune, CoordCube.NUM_SLICE_POSITIONS_PHASE1 * twist[n + 1] + slice[n + 1]));
+            mv = moveList[n][moveIndex[n]];
+            axis[n] = mv / 3;
+            power[n] = mv % 3 + 1;
+            if (stopRequested(ctx) || (bound != null && bound.get() <= maxDepth))
+                return stopped(ctx, bound, maxDepth, best);
+            ctx.phase1Nodes[n + 1]++;
+            // the phase 2 coordinates past depth n no longer match the path
+            if (ctx.cornersValid > n) ctx.cornersValid = n;
+            if (ctx.edgesValid > n) ctx.edgesValid = n;
+            flip[n + 1] = CoordCube.getMove(CoordCube.flipMove, flip[n], mv);
+            twist[n + 1] = CoordCube.getMove(CoordCube.twistMove, twist[n], mv);
+            slice[n + 1] = CoordCube.getMove(CoordCube.FRtoBR_Move, slice[n] * 24, mv) / 24;
+
+            if (CoordCube.FLIPSLICE_TWIST_PRUNING) {
+                // exact distance from the big table, worked out from the parent's distance
+                distPhase1[n + 1] = FlipSliceTwistPruning.nextDistance(distPhase1[n], flip[n + 1], slice[n + 1], twist[n + 1]);
+                minDistPhase1[n + 1] = distPhase1[n + 1];
+            } else {
+                // heuristic is combine flip and twist pruning values then take the max
+                minDistPhase1[n + 1] = Math.max(
+                        CoordCube.getPruning(CoordCube.Slice_Flip_Prune, CoordCube.NUM_SLICE_POSITIONS_PHASE1 * flip[n + 1] + slice[n + 1]),
+                        CoordCube.getPruning(CoordCube.Slice_Twist_Prune, CoordCube.NUM_SLICE_POSITIONS_PHASE1 * twist[n + 1] + slice[n + 1]));
+            }
 
             // If we reached the H subgroup minDist==0 and are near the current depth, try phase-2
             if (minDistPhase1[n + 1] == 0 && n >= depthPhase1 - 5) {
                 minDistPhase1[n + 1] = 10; // bump so we don't repeatedly trigger here
-                if (n == depthPhase1 - 1 && (s = totalDepth(depthPhase1, maxDepth)) >= 0) {
-                    if (s == depthPhase1 || (axis[depthPhase1 - 1] != axis[depthPhase1] && axis[depthPhase1 - 1] != axis[depthPhase1] + 3))
-                        return solutionToString(s);
+                if (n == depthPhase1 - 1 && (s = timedTotalDepth(ctx, depthPhase1, maxDepth)) == STOPPED)
+                    return stopped(ctx, bound, maxDepth, best);
+                if (n == depthPhase1 - 1 && s >= 0) {
+                    if (s == depthPhase1 || (axis[depthPhase1 - 1] != axis[depthPhase1] && axis[depthPhase1 - 1] != axis[depthPhase1] + 3)) {
+                        if (bound != null) {
+                            if (!bound.compareAndSet(maxDepth + 1, s))
+                                return null;
+                            token.cancel(); // stop the other workers
+                        }
+                        if (listener == null)
+                            return solutionToString(ctx, s);
+
+                        best = solutionToString(ctx, s);
+                        listener.onSolution(best, s);
+                        if (s <= targetLength)
+                            return best;
+                        maxDepth = s - 1; // only shorter ones from now on
+                        if (depthPhase1 > maxDepth)
+                            return best; // every solution at this phase 1 depth is already too long
+                    }
+                }
+            }
+
+            int[] next = null;
+            if (depthPhase1 - n > minDistPhase1[n + 1]) {
+                next = n > 0 ? PHASE1_NEXT[axis[n]] : secondMoves != null ? secondMoves : PHASE1_AFTER_FIRST[axis[0]];
+                if (ORDERED_PHASE1) next = closestFirst(ctx, n + 1, next, depthPhase1 - n - 1);
+            }
+            if (next != null && next.length > 0) {
+                // go one deeper, starting at the first move allowed after this one
+                moveList[n + 1] = next;
+                moveIndex[++n] = 0;
+            } else {
+                // next move at this depth, backing up over every depth that has none left
+                while (++moveIndex[n] == moveList[n].length) {
+                    if (n == 0) {
+                        if (depthPhase1 >= maxDepth || onlyDepth > 0)
+                            return best != null ? best : "Error 7"; // depth exceeded
+                        depthPhase1++;
+                        ctx.phase1Depth = depthPhase1;
+                        moveIndex[0] = 0;
+                        break;
+                    }
+                    n--;
                 }
             }
         } while (true);
     }
 
+    // The moves of list, sorted by the phase 1 distance of the position each one leads to from depth n, closest
+    // to H first (equal ones keep their order), and without the ones at limit or more, which the loop would only
+    // prune again. That is one heuristic lookup per move up front, and the paths that reach H come up a lot earlier.
+    // The result is ctx's buffer for depth n and that length, which stays valid until the search comes back to depth n.
+    static int[] closestFirst(SearchContext ctx, int n, int[] list, int limit) {
+        int[] sorted = ctx.orderMoves, distances = ctx.orderDistances;
+        int count = 0;
+        for (int mv : list) {
+            int flip = CoordCube.getMove(CoordCube.flipMove, ctx.flip[n], mv);
+            int twist = CoordCube.getMove(CoordCube.twistMove, ctx.twist[n], mv);
+            int slice = CoordCube.getMove(CoordCube.FRtoBR_Move, ctx.slice[n] * 24, mv) / 24;
+            int distance = CoordCube.FLIPSLICE_TWIST_PRUNING
+                    ? FlipSliceTwistPruning.nextDistance(ctx.distPhase1[n], flip, slice, twist)
+                    : Math.max(
+                        CoordCube.getPruning(CoordCube.Slice_Flip_Prune, CoordCube.NUM_SLICE_POSITIONS_PHASE1 * flip + slice),
+                        CoordCube.getPruning(CoordCube.Slice_Twist_Prune, CoordCube.NUM_SLICE_POSITIONS_PHASE1 * twist + slice));
+            if (distance >= limit)
+                continue;
+            // insertion sort, the lists are at most 18 long
+            int j = count++;
+            while (j > 0 && distances[j - 1] > distance) {
+                distances[j] = distances[j - 1];
+                sorted[j] = sorted[j - 1];
+                j--;
+            }
+            distances[j] = distance;
+            sorted[j] = mv;
+        }
+        int[] ordered = ctx.orderedMoves[n][count];
+        if (ordered == null)
+            ordered = ctx.orderedMoves[n][count] = new int[count];
+        System.arraycopy(sorted, 0, ordered, 0, count);
+        return ordered;
+    }
+
+    // What a stopped search returns: the best solution if it has one (anytime mode), null if another worker
+    // won (parallel modes), otherwise "Error 9" if the token was cancelled and "Error 8" if the deadline passed
+    static String stopped(SearchContext ctx, AtomicInteger bound, int maxDepth, String best) {
+        if (best != null)
+            return best;
+        if (bound != null && bound.get() <= maxDepth)
+            return null;
+        return ctx.token.isCancelled() ? "Error 9" : "Error 8";
+    }
+
+    // totalDepth result when the search has to stop (see stopRequested)
+    static final int STOPPED = -2;
+
+    // totalDepth, with its time added to the phase 2 time of the solve
+    static int timedTotalDepth(SearchContext ctx, int depthPhase1, int maxDepth) {
+        long start = System.nanoTime();
+        ctx.phase2Calls++;
+        int s = totalDepth(ctx, depthPhase1, maxDepth);
+        ctx.phase2Nanos += System.nanoTime() - start;
+        return s;
+    }
+
     // Apply phase2 of algorithm and return the combined phase1 and phase2 depth. 
     // In phase2, only the moves U,D,R2,F2,L2 and B2 are allowed.
-    public static int totalDepth(int depthPhase1, int maxDepth) {
+    static int totalDepth(SearchContext ctx, int depthPhase1, int maxDepth) {
+        int[] axis = ctx.axis, power = ctx.power;
+        int[] parity = ctx.parity, URFtoDLF = ctx.URFtoDLF, FRtoBR = ctx.FRtoBR, URtoUL = ctx.URtoUL, UBtoDF = ctx.UBtoDF, URtoDF = ctx.URtoDF;
+        int[] minDistPhase2 = ctx.minDistPhase2;
         int mv, d1, d2;
         int maxDepthPhase2 = Math.min(10, maxDepth - depthPhase1);
-        
-        for (int i = 0; i < depthPhase1; i++) {
+
+        // Only replay the phase 1 moves the coordinates don't already include (see SearchContext.cornersValid)
+        ctx.replayLookups += 3 * depthPhase1;
+        ctx.entryLookups += 3 * (depthPhase1 - ctx.cornersValid);
+        for (int i = ctx.cornersValid; i < depthPhase1; i++) {
             mv = 3 * axis[i] + power[i] - 1;
-            URFtoDLF[i + 1] = CoordCube.URFtoDLF_Move[URFtoDLF[i]][mv];
-            FRtoBR[i + 1] = CoordCube.FRtoBR_Move[FRtoBR[i]][mv];
-            parity[i + 1] = CoordCube.parityMove[parity[i]][mv];
+            URFtoDLF[i + 1] = CoordCube.getMove(CoordCube.URFtoDLF_Move, URFtoDLF[i], mv);
+            FRtoBR[i + 1] = CoordCube.getMove(CoordCube.FRtoBR_Move, FRtoBR[i], mv);
+            parity[i + 1] = CoordCube.getMove(CoordCube.parityMove, parity[i], mv);
         }
+        ctx.cornersValid = depthPhase1;
 
         if ((d1 = CoordCube.getPruning(CoordCube.Slice_URFtoDLF_Parity_Prune,
-                (CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2 * URFtoDLF[depthPhase1] + FRtoBR[depthPhase1]) * 2 + parity[depthPhase1])) > maxDepthPhase2)
+                (CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2 * URFtoDLF[depthPhase1] + FRtoBR[depthPhase1]) * 2 + parity[depthPhase1])) > maxDepthPhase2) {
+            ctx.cornerPruneRejects++;
             return -1;
+        }
 
-        for (int i = 0; i < depthPhase1; i++) {
+        ctx.replayLookups += 2 * depthPhase1;
+        ctx.entryLookups += 2 * (depthPhase1 - ctx.edgesValid);
+        for (int i = ctx.edgesValid; i < depthPhase1; i++) {
             mv = 3 * axis[i] + power[i] - 1;
-            URtoUL[i + 1] = CoordCube.URtoUL_Move[URtoUL[i]][mv];
-            UBtoDF[i + 1] = CoordCube.UBtoDF_Move[UBtoDF[i]][mv];
+            URtoUL[i + 1] = CoordCube.getMove(CoordCube.URtoUL_Move, URtoUL[i], mv);
+            UBtoDF[i + 1] = CoordCube.getMove(CoordCube.UBtoDF_Move, UBtoDF[i], mv);
         }
-        URtoDF[depthPhase1] = CoordCube.MergeURtoULandUBtoDF[URtoUL[depthPhase1]][UBtoDF[depthPhase1]];
+        ctx.edgesValid = depthPhase1;
+        URtoDF[depthPhase1] = CoordCube.getMergedURtoDF(URtoUL[depthPhase1], UBtoDF[depthPhase1]);
 
         if ((d2 = CoordCube.getPruning(CoordCube.Slice_URtoDF_Parity_Prune,
-                (CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2 * URtoDF[depthPhase1] + FRtoBR[depthPhase1]) * 2 + parity[depthPhase1])) > maxDepthPhase2)
+                (CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2 * URtoDF[depthPhase1] + FRtoBR[depthPhase1]) * 2 + parity[depthPhase1])) > maxDepthPhase2) {
+            ctx.edgePruneRejects++;
             return -1;
+        }
 
         if ((minDistPhase2[depthPhase1] = Math.max(d1, d2)) == 0)
             return depthPhase1;
 
-        // Phase 2 Search
-        int depthPhase2 = 1;
+        if (CoordCube.CORNER_EDGE_PRUNING) {
+            int d3 = CornerEdgePruning.distance(URFtoDLF[depthPhase1], URtoDF[depthPhase1], FRtoBR[depthPhase1], parity[depthPhase1]);
+            if (d3 > maxDepthPhase2) {
+                ctx.cornerEdgePruneRejects++;
+                return -1;
+            }
+            minDistPhase2[depthPhase1] = Math.max(minDistPhase2[depthPhase1], d3);
+        }
+
+        // An earlier phase 2 search from the same position may already have shown that it needs more moves
+        // than we have. Otherwise it at least tells us which depths there is no point trying.
+        long key = TranspositionCache.key(URFtoDLF[depthPhase1], URtoDF[depthPhase1], FRtoBR[depthPhase1], parity[depthPhase1]);
+        int knownBound = ctx.phase2Cache.lowerBound(key);
+        if (knownBound > maxDepthPhase2) {
+            ctx.phase2CacheHits++;
+            return -1;
+        }
+
+        // Phase 2 Search, over the moves in PHASE2_FIRST and PHASE2_NEXT the same way phase 1 does it
+        int depthPhase2 = Math.max(1, knownBound);
         int n = depthPhase1;
-        boolean busy = false;
-        power[depthPhase1] = 0;
-        axis[depthPhase1] = 0;
-        minDistPhase2[n + 1] = 1;
+        int[][] moveList = ctx.moveList;
+        int[] moveIndex = ctx.moveIndex;
+        moveList[n] = PHASE2_FIRST;
+        moveIndex[n] = 0;
 
         do {
-            do {
-                if ((depthPhase1 + depthPhase2 - n > minDistPhase2[n + 1]) && !busy) {
-                    if (axis[n] == 0 || axis[n] == 3) {  // Initialize next move
-                        axis[++n] = 1;
-                        power[n] = 2; // R2, L2, F2, B2
-                    } else {
-                        axis[++n] = 0;
-                        power[n] = 1; // U, D
-                    }
-                } else if ((axis[n] == 0 || axis[n] == 3) ? (++power[n] > 3) : ((power[n] = power[n] + 2) > 3)) {
-                    do {
-                        if (++axis[n] > 5) {
-                            if (n == depthPhase1) {
-                                if (depthPhase2 >= maxDepthPhase2)
-                                    return -1;
-                                else {
-                                    depthPhase2++; // Increase depth
-                                    axis[n] = 0;
-                                    power[n] = 1;
-                                    busy = false;
-                                    break;
-                                }
-                            } else {
-                                n--; // Pop stack
-                                busy = true;
-                                break;
-                            }
-                        } else {
-                            if (axis[n] == 0 || axis[n] == 3)
-                                power[n] = 1;
-                            else
-                                power[n] = 2;
-                            busy = false;
-                        }
-                    } while (n != depthPhase1 && (axis[n - 1] == axis[n] || axis[n - 1] - 3 == axis[n]));
-                } else
-                    busy = false;
-            } while (busy);
-
-            // Compute new coordinates
-            mv = 3 * axis[n] + power[n] - 1;
-            
-            // Safety Check: If mv is invalid, backtrack immediately (prevents Index 21 crash)
-            if (mv < 0 || mv >= 18) {
-                busy = true; // Force loop to retry
-                continue;
-            }
+            mv = moveList[n][moveIndex[n]];
+            axis[n] = mv / 3;
+            power[n] = mv % 3 + 1;
+            if (stopRequested(ctx))
+                return STOPPED;
+            ctx.phase2Nodes++;
 
-            URFtoDLF[n + 1] = CoordCube.URFtoDLF_Move[URFtoDLF[n]][mv];
-            FRtoBR[n + 1] = CoordCube.FRtoBR_Move[FRtoBR[n]][mv];
-            parity[n + 1] = CoordCube.parityMove[parity[n]][mv];
-            URtoDF[n + 1] = CoordCube.URtoDF_Move[URtoDF[n]][mv];
+            URFtoDLF[n + 1] = CoordCube.getMove(CoordCube.URFtoDLF_Move, URFtoDLF[n], mv);
+            FRtoBR[n + 1] = CoordCube.getMove(CoordCube.FRtoBR_Move, FRtoBR[n], mv);
+            parity[n + 1] = CoordCube.getMove(CoordCube.parityMove, parity[n], mv);
+            URtoDF[n + 1] = CoordCube.getMove(CoordCube.URtoDF_Move, URtoDF[n], mv);
 
             // Heuristic Check
             minDistPhase2[n + 1] = Math.max(
@@ -281,8 +606,30 @@ public class Search {
                 CoordCube.getPruning(CoordCube.Slice_URFtoDLF_Parity_Prune, 
                     (CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2 * URFtoDLF[n + 1] + FRtoBR[n + 1]) * 2 + parity[n + 1])
             );
+            // the corner/edge table only when the small ones would still let us go deeper
+            if (CoordCube.CORNER_EDGE_PRUNING && depthPhase1 + depthPhase2 - n > minDistPhase2[n + 1])
+                minDistPhase2[n + 1] = Math.max(minDistPhase2[n + 1],
+                    CornerEdgePruning.distance(URFtoDLF[n + 1], URtoDF[n + 1], FRtoBR[n + 1], parity[n + 1]));
+            if (minDistPhase2[n + 1] == 0)
+                return depthPhase1 + depthPhase2;
 
-        } while (minDistPhase2[n + 1] != 0);
-        return depthPhase1 + depthPhase2;
+            if (depthPhase1 + depthPhase2 - n > minDistPhase2[n + 1]) {
+                moveList[n + 1] = PHASE2_NEXT[axis[n]];
+                moveIndex[++n] = 0;
+            } else {
+                while (++moveIndex[n] == moveList[n].length) {
+                    if (n == depthPhase1) {
+                        if (depthPhase2 >= maxDepthPhase2) {
+                            ctx.phase2Cache.record(key, maxDepthPhase2 + 1);
+                            return -1;
+                        }
+                        depthPhase2++; // Increase depth
+                        moveIndex[n] = 0;
+                        break;
+                    }
+                    n--; // Pop stack
+                }
+            }
+        } while (true);
     }
 }
\ No newline at end of file
@@ -0,0 +1,112 @@
+package rubikscube;
+
+/*
+ * The manual DFS stack of one running search. Search used to keep these arrays in static fields,
+ * which meant two solves in the same JVM overwrote each other's state. Now every solve checks a
+ * context out of a small pool, so any number of threads can solve at once while they all read the
+ * same CoordCube tables (those are never written after class init).
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class SearchContext {
+
+    // Increased size to [40] to prevent ArrayIndexOutOfBoundsException during lookaheads was initially fine at 31 but some solves go deeper
+    // Standard Kociemba solves can briefly exceed depth 30 during phase transitions.
+    static final int MAX_DEPTH = 40;
+
+    // The face being turned (0=U, 1=R, 2=F, 3=D, 4=L, 5=B)
+    final int[] axis = new int[MAX_DEPTH];
+    // The amount of turn (1=90, 2=180, 3=270)
+    final int[] power = new int[MAX_DEPTH];
+
+    // The successor list the move at each depth comes from (see Search.PHASE1_NEXT) and its index in there
+    final int[][] moveList = new int[MAX_DEPTH][];
+    final int[] moveIndex = new int[MAX_DEPTH];
+
+    // Search.closestFirst: its move lists by depth and length, and the scratch arrays it sorts in
+    final int[][][] orderedMoves = new int[MAX_DEPTH][CoordCube.NUM_MOVES + 1][];
+    final int[] orderMoves = new int[CoordCube.NUM_MOVES];
+    final int[] orderDistances = new int[CoordCube.NUM_MOVES];
+
+    // Phase 1 Coordinates State at each depth
+    final int[] flip = new int[MAX_DEPTH];   // edge flip coordinate
+    final int[] twist = new int[MAX_DEPTH];  // corner twist coordinate
+    final int[] slice = new int[MAX_DEPTH];  // slice coordinate (coarse edge grouping)
+
+    // Phase 2 Coordinates State at each depth
+    final int[] parity = new int[MAX_DEPTH];   // corner/edge parity
+    final int[] URFtoDLF = new int[MAX_DEPTH]; // URF-to-DLF corner index
+    final int[] FRtoBR = new int[MAX_DEPTH];   // FR-to-BR edge index
+    final int[] URtoUL = new int[MAX_DEPTH];   // UR-to-UL edge index
+    final int[] UBtoDF = new int[MAX_DEPTH];   // UB-to-DF edge index
+    final int[] URtoDF = new int[MAX_DEPTH];   // merged UR-to-DF index used for pruning
+
+    // IDA star heuristic estimates from pruning tables in CoordCube
+    final int[] minDistPhase1 = new int[MAX_DEPTH];
+    final int[] minDistPhase2 = new int[MAX_DEPTH];
+
+    // Exact phase 1 distance at each depth, only used with the big FlipSliceTwistPruning table
+    final int[] distPhase1 = new int[MAX_DEPTH];
+
+    // The phase 2 coordinates above are kept up to date along the phase 1 path lazily: entries 0..cornersValid
+    // of URFtoDLF, FRtoBR and parity (and 0..edgesValid of URtoUL and UBtoDF) match the moves on the stack.
+    // Phase 1 lowers both marks to n whenever it changes the move at depth n, and Search.totalDepth only
+    // replays the moves above the mark, so trying phase 2 after a change of the last move costs one step.
+    int cornersValid;
+    int edgesValid;
+
+    // Phase 2 positions of the running solve that are known to need more than some number of moves
+    final TranspositionCache phase2Cache = new TranspositionCache(1 << 13);
+
+    // Counters of the running solve, reset at its start and handed out as a SearchResult (see there)
+    final long[] phase1Nodes = new long[MAX_DEPTH];
+    int phase1Depth;
+    long phase2Calls;
+    long cornerPruneRejects;
+    long edgePruneRejects;
+    long cornerEdgePruneRejects;
+    long phase2Nodes;
+    long phase2CacheHits;
+    long entryLookups;
+    long replayLookups;
+    long phase2Nanos;
+
+    void resetCounters() {
+        Arrays.fill(phase1Nodes, 0);
+        phase1Depth = 0;
+        phase2Calls = 0;
+        cornerPruneRejects = 0;
+        edgePruneRejects = 0;
+        cornerEdgePruneRejects = 0;
+        phase2Nodes = 0;
+        phase2CacheHits = 0;
+        entryLookups = 0;
+        replayLookups = 0;
+        phase2Nanos = 0;
+    }
+
+    // When to give up (System.nanoTime()) and the token to poll, for the running solve, and the nodes expanded so far
+    long deadline;
+    CancellationToken token;
+    int nodes;
+
+    // Contexts not in use right now. A context is about 75 KB, almost all of it the phase 2 cache (8192 longs
+    // and bytes), and solution() only clears the cache's keys when the last solve stored something.
+    // The pool never holds more contexts than there were solves running at the same time (one per thread,
+    // the parallel modes included), so it is not shrunk: a few MB even on a host with dozens of cores.
+    private static final ConcurrentLinkedQueue<SearchContext> pool = new ConcurrentLinkedQueue<>();
+
+    // Take a free context from the pool, or make a new one if every context is busy
+    public static SearchContext acquire() {
+        SearchContext ctx = pool.poll();
+        return ctx != null ? ctx : new SearchContext();
+    }
+
+    // Give a context back once the solve that used it is done
+    public static void release(SearchContext ctx) {
+        ctx.token = null;
+        pool.offer(ctx);
+    }
+}
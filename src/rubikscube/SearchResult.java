@@ -0,0 +1,72 @@
+package rubikscube;
+
+/*
+ * What Search.solve returns: the solution string (or the usual "Error N") plus counters for that one solve,
+ * to see where the time of a slow solve went. The counters are plain increments on the SearchContext while
+ * the search runs and only get copied in here at the end, so they are always on.
+ */
+
+import java.util.Arrays;
+
+public class SearchResult {
+
+    public final String solution;
+
+    // phase1Nodes[d]: phase 1 positions generated d moves deep, 1..phase1Depth
+    public final long[] phase1Nodes;
+    // Phase 1 depth the search got to (the last one it finished or was working on)
+    public final int phase1Depth;
+
+    // Calls to Search.totalDepth, i.e. phase 1 paths that reached H at full depth
+    public final long phase2Calls;
+    // Of those, how many the corner (URFtoDLF) and the edge (URtoDF) pruning table turned away before any search
+    public final long cornerPruneRejects;
+    public final long edgePruneRejects;
+    // ... and the corner/edge table (only with -Drubikscube.phase2Table=true, see CornerEdgePruning)
+    public final long cornerEdgePruneRejects;
+    // Phase 2 positions generated over all calls
+    public final long phase2Nodes;
+    // Calls skipped because the phase 2 position was already known to need too many moves (see TranspositionCache)
+    public final long phase2CacheHits;
+
+    // Move table lookups spent bringing the phase 2 coordinates to the end of the phase 1 path, and what replaying
+    // the whole path every time would have taken (see SearchContext.cornersValid)
+    public final long entryLookups;
+    public final long replayLookups;
+
+    // Wall time inside totalDepth, and everything else
+    public final long phase1Nanos;
+    public final long phase2Nanos;
+
+    SearchResult(String solution, SearchContext ctx, long totalNanos) {
+        this.solution = solution;
+        this.phase1Depth = ctx.phase1Depth;
+        this.phase1Nodes = Arrays.copyOf(ctx.phase1Nodes, phase1Depth + 1);
+        this.phase2Calls = ctx.phase2Calls;
+        this.cornerPruneRejects = ctx.cornerPruneRejects;
+        this.edgePruneRejects = ctx.edgePruneRejects;
+        this.cornerEdgePruneRejects = ctx.cornerEdgePruneRejects;
+        this.phase2Nodes = ctx.phase2Nodes;
+        this.phase2CacheHits = ctx.phase2CacheHits;
+        this.entryLookups = ctx.entryLookups;
+        this.replayLookups = ctx.replayLookups;
+        this.phase2Nanos = ctx.phase2Nanos;
+        this.phase1Nanos = totalNanos - ctx.phase2Nanos;
+    }
+
+    public boolean isSolved() {
+        return !solution.startsWith("Error");
+    }
+
+    public long totalPhase1Nodes() {
+        long total = 0;
+        for (long nodes : phase1Nodes) total += nodes;
+        return total;
+    }
+
+    public String toString() {
+        return String.format("%s%n  phase 1: %d nodes %s, %.3f ms%n  phase 2: %d calls (%d stopped by corners, %d by edges, %d by corners and edges, %d by the cache), %d nodes, %.3f ms",
+                solution, totalPhase1Nodes(), Arrays.toString(Arrays.copyOfRange(phase1Nodes, 1, phase1Nodes.length)), phase1Nanos / 1e6,
+                phase2Calls, cornerPruneRejects, edgePruneRejects, cornerEdgePruneRejects, phase2CacheHits, phase2Nodes, phase2Nanos / 1e6);
+    }
+}
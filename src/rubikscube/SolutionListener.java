@@ -0,0 +1,8 @@
+package rubikscube;
+
+// Gets the solutions found by Search.solutionAnytime, each one shorter than the one before.
+// length is the number of face turns (a half turn like UU counts as one).
+// Called on the searching thread, so keep it quick.
+public interface SolutionListener {
+    void onSolution(String solution, int length);
+}
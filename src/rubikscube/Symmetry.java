@@ -0,0 +1,233 @@
+package rubikscube;
+
+/*
+ * Symmetries of the cube and the symmetry reduced phase 1 coordinate.
+ * A lot of cube positions are "the same" up to rotating or mirroring the whole cube, and
+ * Kociemba's stronger phase 1 pruning relies on that: instead of the raw flip x slice coordinate
+ * (2048 * 495 = 1,013,760 values) we use equivalence classes under the 16 symmetries that keep
+ * the UD axis in place (D4h), which leaves 64430 classes.
+ * Symmetry cube definitions and the class construction follow http://kociemba.org/cube.htm
+ * and Kociemba's reference implementation (symmetries.py).
+ *
+ * Conventions, with S a symmetry cube and S^-1 its inverse:
+ *   a raw flipslice coordinate x belongs to class flipSliceClassIdx[x], and with s = flipSliceSym[x]
+ *   the class representative is S x S^-1 (so x = S^-1 rep S).
+ *   twistConj[16 * twist + s] is the twist of S twist S^-1, so a whole cube can be moved into the
+ *   representative's frame by conjugating its other coordinates with the same s.
+ */
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import static rubikscube.Corner.*;
+import static rubikscube.Edge.*;
+
+public class Symmetry {
+
+    public static final int NUM_SYM = 48;          // All symmetries of the cube (rotations and mirrors)
+    public static final int NUM_SYM_D4h = 16;      // The ones that keep the UD axis, so they map H onto itself
+    public static final int NUM_FLIPSLICE = CoordCube.NUM_EDGE_ORIENTATIONS * CoordCube.NUM_SLICE_POSITIONS_PHASE1;
+    public static final int NUM_FLIPSLICE_CLASS = 64430;
+
+    static final char INVALID = 0xFFFF;
+
+    // The four basic symmetries everything else is generated from
+
+    // 120 degree clockwise rotation around the long diagonal URF-DBL
+    static final CubieCube ROT_URF3 = symmetryCube(
+            new Corner[]{URF, DFR, DLF, UFL, UBR, DRB, DBL, ULB}, new byte[]{1, 2, 1, 2, 2, 1, 2, 1},
+            new Edge[]{UF, FR, DF, FL, UB, BR, DB, BL, UR, DR, DL, UL}, new byte[]{1, 0, 1, 0, 1, 0, 1, 0, 1, 1, 1, 1});
+
+    // 180 degree rotation around the axis through the F and B centers
+    static final CubieCube ROT_F2 = symmetryCube(
+            new Corner[]{DLF, DFR, DRB, DBL, UFL, URF, UBR, ULB}, new byte[]{0, 0, 0, 0, 0, 0, 0, 0},
+            new Edge[]{DL, DF, DR, DB, UL, UF, UR, UB, FL, FR, BR, BL}, new byte[]{0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+
+    // 90 degree clockwise rotation around the axis through the U and D centers
+    static final CubieCube ROT_U4 = symmetryCube(
+            new Corner[]{UBR, URF, UFL, ULB, DRB, DFR, DLF, DBL}, new byte[]{0, 0, 0, 0, 0, 0, 0, 0},
+            new Edge[]{UB, UR, UF, UL, DB, DR, DF, DL, BR, FR, FL, BL}, new byte[]{0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1});
+
+    // Reflection at the plane through the U, D, F and B centers (orientation 3 marks a mirrored corner)
+    static final CubieCube MIRR_LR2 = symmetryCube(
+            new Corner[]{UFL, URF, UBR, ULB, DLF, DFR, DRB, DBL}, new byte[]{3, 3, 3, 3, 3, 3, 3, 3},
+            new Edge[]{UL, UF, UR, UB, DL, DF, DR, DB, FL, FR, BR, BL}, new byte[]{0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+
+    // symCube[16 * urf3 + 8 * f2 + 2 * u4 + lr2], so the first 16 are exactly the D4h symmetries
+    public static final CubieCube[] symCube = new CubieCube[NUM_SYM];
+    // symCube[s] * symCube[invIdx[s]] is the identity
+    public static final int[] invIdx = new int[NUM_SYM];
+    // moveConj[18 * s + m] is the move S m S^-1
+    public static final int[] moveConj = new int[NUM_SYM * CoordCube.NUM_MOVES];
+
+    // Conjugation of the twist coordinate by the D4h symmetries, indexed 16 * twist + s
+    public static char[] twistConj = new char[CoordCube.NUM_CORNER_ORIENTATIONS * NUM_SYM_D4h];
+
+    // Flipslice classes. The raw coordinate is indexed like Slice_Flip_Prune: 495 * flip + slice
+    public static char[] flipSliceClassIdx = new char[NUM_FLIPSLICE];
+    public static byte[] flipSliceSym = new byte[NUM_FLIPSLICE];
+    public static int[] flipSliceRep = new int[NUM_FLIPSLICE_CLASS];
+    // Bit s is set if symmetry s maps the class representative onto itself
+    public static char[] flipSliceSelfSym = new char[NUM_FLIPSLICE_CLASS];
+
+    // Sym coordinate move table: the result of move m on class c is (class << 4) | sym at [18 * c + m].
+    // The FlipSliceTwistPruning BFS moves the class representatives with it.
+    public static int[] flipSliceSymMove = new int[NUM_FLIPSLICE_CLASS * CoordCube.NUM_MOVES];
+
+    static {
+        // The symmetry cubes themselves are cheap, so those are always built here
+        CubieCube cc = new CubieCube();
+        for (int urf3 = 0; urf3 < 3; urf3++) {
+            for (int f2 = 0; f2 < 2; f2++) {
+                for (int u4 = 0; u4 < 4; u4++) {
+                    for (int lr2 = 0; lr2 < 2; lr2++) {
+                        symCube[16 * urf3 + 8 * f2 + 2 * u4 + lr2] = new CubieCube(cc);
+                        cc.multiply(MIRR_LR2);
+                    }
+                    cc.multiply(ROT_U4);
+                }
+                cc.multiply(ROT_F2);
+            }
+            cc.multiply(ROT_URF3);
+        }
+
+        for (int j = 0; j < NUM_SYM; j++) {
+            for (int k = 0; k < NUM_SYM; k++) {
+                CubieCube product = new CubieCube(symCube[j]);
+                product.multiply(symCube[k]);
+                if (isIdentity(product)) {
+                    invIdx[j] = k;
+                    break;
+                }
+            }
+        }
+
+        for (int s = 0; s < NUM_SYM; s++) {
+            for (int m = 0; m < CoordCube.NUM_MOVES; m++) {
+                CubieCube conj = new CubieCube(symCube[s]);
+                conj.multiply(moveCube(m));
+                conj.multiply(symCube[invIdx[s]]);
+                for (int m2 = 0; m2 < CoordCube.NUM_MOVES; m2++) {
+                    if (sameCube(conj, moveCube(m2))) {
+                        moveConj[CoordCube.NUM_MOVES * s + m] = m2;
+                        break;
+                    }
+                }
+            }
+        }
+
+        // The class tables take a second or two, so they go through the same cache as CoordCube
+        Path cache = TableStore.cachePath("symmetry");
+        if (!TableStore.load(cache, cachedTables())) {
+            if (!TableStore.loadResource("symmetry", cachedTables())) {
+                generateTwistConj();
+                generateFlipSliceClasses();
+                generateFlipSliceSymMove();
+            }
+            TableStore.save(cache, cachedTables());
+        }
+    }
+
+    static Object[] cachedTables() {
+        return new Object[] { twistConj, flipSliceClassIdx, flipSliceSym, flipSliceRep, flipSliceSelfSym, flipSliceSymMove };
+    }
+
+    static CubieCube symmetryCube(Corner[] cp, byte[] co, Edge[] ep, byte[] eo) {
+        CubieCube cc = new CubieCube();
+        cc.cornerPermutation = cp;
+        cc.cornerOrientation = co;
+        cc.edgePermutation = ep;
+        cc.edgeOrientation = eo;
+        return cc;
+    }
+
+    // The cube for move m (0..17), i.e. face m / 3 turned m % 3 + 1 times
+    static CubieCube moveCube(int m) {
+        CubieCube cc = new CubieCube();
+        for (int k = 0; k <= m % 3; k++) {
+            cc.multiply(CubieCube.moves[m / 3]);
+        }
+        return cc;
+    }
+
+    static boolean isIdentity(CubieCube cc) {
+        return sameCube(cc, new CubieCube());
+    }
+
+    static boolean sameCube(CubieCube a, CubieCube b) {
+        return Arrays.equals(a.cornerPermutation, b.cornerPermutation) && Arrays.equals(a.cornerOrientation, b.cornerOrientation)
+            && Arrays.equals(a.edgePermutation, b.edgePermutation) && Arrays.equals(a.edgeOrientation, b.edgeOrientation);
+    }
+
+    // S twist S^-1 for the 16 D4h symmetries
+    static void generateTwistConj() {
+        CubieCube cc = new CubieCube();
+        for (short t = 0; t < CoordCube.NUM_CORNER_ORIENTATIONS; t++) {
+            cc.setTwist(t);
+            for (int s = 0; s < NUM_SYM_D4h; s++) {
+                CubieCube ss = new CubieCube(symCube[s]);
+                ss.multiplyCorner(cc);
+                ss.multiplyCorner(symCube[invIdx[s]]);
+                twistConj[NUM_SYM_D4h * t + s] = (char) ss.getTwist();
+            }
+        }
+    }
+
+    // Walk all raw flipslice coordinates. The first unseen one starts a new class and becomes its
+    // representative, then every S^-1 rep S is marked as belonging to that class with symmetry s.
+    static void generateFlipSliceClasses() {
+        Arrays.fill(flipSliceClassIdx, INVALID);
+        CubieCube cc = new CubieCube();
+        int classIdx = 0;
+        for (int slice = 0; slice < CoordCube.NUM_SLICE_POSITIONS_PHASE1; slice++) {
+            cc.setFRtoBR((short) (24 * slice));
+            for (int flip = 0; flip < CoordCube.NUM_EDGE_ORIENTATIONS; flip++) {
+                cc.setFlip((short) flip);
+                int raw = CoordCube.NUM_SLICE_POSITIONS_PHASE1 * flip + slice;
+                if (flipSliceClassIdx[raw] != INVALID) continue;
+
+                flipSliceClassIdx[raw] = (char) classIdx;
+                flipSliceSym[raw] = 0;
+                flipSliceRep[classIdx] = raw;
+                for (int s = 0; s < NUM_SYM_D4h; s++) {
+                    CubieCube ss = new CubieCube(symCube[invIdx[s]]);
+                    ss.multiplyEdge(cc);
+                    ss.multiplyEdge(symCube[s]);
+                    int rawNew = CoordCube.NUM_SLICE_POSITIONS_PHASE1 * ss.getFlip() + ss.getFRtoBR() / 24;
+                    if (flipSliceClassIdx[rawNew] == INVALID) {
+                        flipSliceClassIdx[rawNew] = (char) classIdx;
+                        flipSliceSym[rawNew] = (byte) s;
+                    }
+                    if (rawNew == raw) {
+                        flipSliceSelfSym[classIdx] |= (char) (1 << s);
+                    }
+                }
+                classIdx++;
+            }
+        }
+    }
+
+    // Apply every move to every class representative with the raw move tables and look up the result's class
+    static void generateFlipSliceSymMove() {
+        for (int c = 0; c < NUM_FLIPSLICE_CLASS; c++) {
+            int rep = flipSliceRep[c];
+            int flip = rep / CoordCube.NUM_SLICE_POSITIONS_PHASE1;
+            int slice = rep % CoordCube.NUM_SLICE_POSITIONS_PHASE1;
+            for (int m = 0; m < CoordCube.NUM_MOVES; m++) {
+                int newFlip = CoordCube.getMove(CoordCube.flipMove, flip, m);
+                int newSlice = CoordCube.getMove(CoordCube.FRtoBR_Move, slice * 24, m) / 24;
+                int raw = CoordCube.NUM_SLICE_POSITIONS_PHASE1 * newFlip + newSlice;
+                flipSliceSymMove[CoordCube.NUM_MOVES * c + m] = (flipSliceClassIdx[raw] << 4) | flipSliceSym[raw];
+            }
+        }
+    }
+
+    // Class of a raw flip and slice coordinate
+    public static int flipSliceClass(int flip, int slice) {
+        return flipSliceClassIdx[CoordCube.NUM_SLICE_POSITIONS_PHASE1 * flip + slice];
+    }
+
+    // Symmetry that takes a raw flip and slice coordinate to its class representative
+    public static int flipSliceSymmetry(int flip, int slice) {
+        return flipSliceSym[CoordCube.NUM_SLICE_POSITIONS_PHASE1 * flip + slice];
+    }
+}
@@ -0,0 +1,76 @@
+package rubikscube;
+
+/*
+ * One precomputed CoordCube table (a move table or a pruning table).
+ * With the default heap backend it is just a Java array. With the shared backend (see TableStore.SHARED)
+ * it becomes a read only view into the cache file mapped from /dev/shm, so every solver process on the host
+ * reads the same physical pages and none of the table data sits on the Java heap for the GC to walk.
+ *
+ * SHARED is a static final, so the JIT only compiles the branch that is in use and heap lookups stay
+ * plain array reads. Making the tables ByteBuffer/ShortBuffer fields directly would have put the buffer
+ * get() and its extra index checks on every lookup in heap mode as well.
+ */
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+public final class Table {
+
+    // Heap backend storage, exactly one of them is set. Generation always writes into these.
+    public byte[] bytes;
+    public short[] shorts;
+
+    // Shared backend storage. Until the table is mapped these just wrap the heap arrays above.
+    ByteBuffer sharedBytes;
+    ShortBuffer sharedShorts;
+
+    private Table(byte[] bytes, short[] shorts) {
+        this.bytes = bytes;
+        this.shorts = shorts;
+        if (TableStore.SHARED) {
+            sharedBytes = bytes == null ? null : ByteBuffer.wrap(bytes);
+            sharedShorts = shorts == null ? null : ShortBuffer.wrap(shorts);
+        }
+    }
+
+    public static Table ofBytes(int length) {
+        return new Table(new byte[length], null);
+    }
+
+    public static Table ofShorts(int length) {
+        return new Table(null, new short[length]);
+    }
+
+    public static Table of(short[] values) {
+        return new Table(null, values);
+    }
+
+    public byte getByte(int index) {
+        return TableStore.SHARED ? sharedBytes.get(index) : bytes[index];
+    }
+
+    public short getShort(int index) {
+        return TableStore.SHARED ? sharedShorts.get(index) : shorts[index];
+    }
+
+    public int length() {
+        return bytes != null ? bytes.length : shorts != null ? shorts.length
+             : sharedBytes != null ? sharedBytes.capacity() : sharedShorts.capacity();
+    }
+
+    public boolean isBytes() {
+        return bytes != null || sharedBytes != null;
+    }
+
+    // Switch to a view of the mapped cache file and drop the heap copy (shared backend only)
+    void share(Buffer view) {
+        if (isBytes()) {
+            sharedBytes = (ByteBuffer) view;
+            bytes = null;
+        } else {
+            sharedShorts = (ShortBuffer) view;
+            shorts = null;
+        }
+    }
+}
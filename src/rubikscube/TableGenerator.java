@@ -0,0 +1,80 @@
+package rubikscube;
+
+/*
+ * Build step that generates every table once and writes them as gzip compressed resources next to the
+ * compiled classes, so they end up inside the jar. At class init CoordCube (and Symmetry, QuarterTurnPruning, ...)
+ * load these with TableStore.loadResource when there is no cache file yet, which means a fresh machine or
+ * container never has to run the move simulation or the BFS at startup.
+ *
+ *   javac -d out src/rubikscube/*.java
+ *   java -cp out rubikscube.TableGenerator out
+ *   jar cfe rubikscube.jar rubikscube.Solver -C out .
+ *
+ * Both pruning layouts (byte and nibble packed) are written, so the jar works with either
+ * -Drubikscube.packedPruning setting. The big phase 1 table is ~35 MB before compression,
+ * so it is only packaged when the generator itself runs with -Drubikscube.phase1Table=true,
+ * and the ~56 MB phase 2 corner/edge table only with -Drubikscube.phase2Table=true.
+ * The same goes for the ~86 MB of OptimalSearch pattern databases and -Drubikscube.optimalTables=true.
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class TableGenerator {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("usage: java rubikscube.TableGenerator <classes dir>");
+            return;
+        }
+        // Always start from freshly generated tables, not from whatever cache file is lying around, nor from the
+        // resources of an earlier build if the output directory is on the classpath.
+        // The tables are written out from their heap arrays, which the shared backend drops once it has mapped
+        // the cache file, so always generate with the heap backend whatever -Drubikscube.tableBackend says.
+        System.setProperty("rubikscube.tableCache", "off");
+        System.setProperty("rubikscube.tableResources", "off");
+        System.setProperty("rubikscube.tableBackend", "heap");
+        Path out = Paths.get(args[0]);
+
+        long t0 = System.nanoTime();
+        write(out, CoordCube.tableSetName(CoordCube.PACKED_PRUNING), CoordCube.cachedTables());
+        if (!CoordCube.PACKED_PRUNING) {
+            write(out, CoordCube.tableSetName(true), packedTables());
+        }
+        write(out, "symmetry", Symmetry.cachedTables());
+        write(out, "quarter-turn", QuarterTurnPruning.cachedTables());
+        if (CoordCube.FLIPSLICE_TWIST_PRUNING) {
+            write(out, "phase1-flipslice-twist", (Object) FlipSliceTwistPruning.table);
+        }
+        if (CoordCube.CORNER_EDGE_PRUNING) {
+            write(out, "phase2-corner-edge", CornerEdgePruning.cachedTables());
+        }
+        if (Boolean.getBoolean("rubikscube.optimalTables")) {
+            write(out, "optimal", OptimalPruning.cachedTables());
+        }
+        System.out.printf("Generated tables in %.1f s%n", (System.nanoTime() - t0) / 1e9);
+    }
+
+    static void write(Path out, String name, Object... tables) throws IOException {
+        Path file = TableStore.saveResource(out, name, tables);
+        System.out.printf("  %-32s %,d bytes%n", out.relativize(file), Files.size(file));
+    }
+
+    // cachedTables() with the pruning tables nibble packed, for jars run with -Drubikscube.packedPruning=true
+    static Object[] packedTables() {
+        Object[] tables = CoordCube.cachedTables();
+        for (int t = 0; t < tables.length; t++) {
+            Table table = (Table) tables[t];
+            if (table.isBytes()) {
+                byte[] full = new byte[table.length()];
+                for (int i = 0; i < full.length; i++) full[i] = table.getByte(i);
+                byte[] packed = new byte[(full.length + 1) / 2];
+                CoordCube.packPruning(full, packed);
+                tables[t] = packed;
+            }
+        }
+        return tables;
+    }
+}
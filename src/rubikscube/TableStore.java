@@ -0,0 +1,329 @@
+package rubikscube;
+
+/*
+ * Saves the CoordCube tables to a binary file so they only have to be generated once.
+ * On later runs the file is memory mapped with FileChannel.map and either copied straight into the
+ * heap arrays (load), or used in place as read only buffers (map). The second one is what the shared
+ * table backend uses: every solver process on the host maps the same file and shares one copy of the pages.
+ * Both are a lot cheaper than redoing the move simulation and the BFS for every table.
+ * The same format, gzip compressed, is also packaged into the jar by TableGenerator (loadResource),
+ * so a fresh machine without a cache file still doesn't have to generate anything.
+ *
+ * File layout (little endian):
+ *   magic, version, table count, payload length, CRC32 of the payload
+ *   one descriptor per table: kind, length
+ *   payload: every table back to back in the order they were passed in
+ *
+ * Tables can be byte[], short[], char[] or int[] arrays, or Table objects (stored through their heap array).
+ *
+ * If anything does not match (old version, different table shapes, bad checksum, truncated file)
+ * load() returns false (map() returns null) and the caller regenerates the tables and saves a fresh copy.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class TableStore {
+
+    static final int MAGIC = 0x4B435442; // "KCTB"
+
+    // Bump this whenever the way a table is generated changes, so old cache files are thrown away
+    static final int VERSION = 3;
+
+    // Kinds of arrays we know how to store
+    static final int KIND_BYTES = 1;
+    static final int KIND_SHORTS = 2;
+    static final int KIND_CHARS = 3;
+    static final int KIND_INTS = 4;
+
+    static final int HEADER_BYTES = 4 + 4 + 4 + 8 + 8;
+    static final int DESCRIPTOR_BYTES = 4 + 4;
+
+    // Table backend, picked with -Drubikscube.tableBackend=heap|shared
+    //   heap:   every process copies the tables into its own Java arrays (the default)
+    //   shared: the tables are used straight out of the mapped cache file, which lives in /dev/shm by default,
+    //           so all solver processes on a host share one physical copy and the GC never has to look at them
+    public static final boolean SHARED = "shared".equalsIgnoreCase(System.getProperty("rubikscube.tableBackend"));
+
+    // Where a cache file lives. The directory can be changed with -Drubikscube.tableCache=<dir>,
+    // or caching turned off with "off". The name tells table sets and layouts apart (byte vs packed pruning).
+    public static Path cachePath(String name) {
+        String configured = System.getProperty("rubikscube.tableCache");
+        if (configured != null && (configured.isEmpty() || configured.equalsIgnoreCase("off"))) {
+            return null;
+        }
+        Path dir;
+        if (configured != null) {
+            dir = Paths.get(configured);
+        } else if (SHARED && Files.isDirectory(Paths.get("/dev/shm"))) {
+            dir = Paths.get("/dev/shm");
+        } else {
+            dir = Paths.get(System.getProperty("java.io.tmpdir"));
+        }
+        return dir.resolve("rubikscube-" + name + "-v" + VERSION + ".bin");
+    }
+
+    // Fill the given arrays from the cache file. Returns false if the file is missing, stale or corrupt.
+    // The arrays are only touched after the whole file has been validated.
+    public static boolean load(Path file, Object... tables) {
+        ByteBuffer payload = open(file, tables);
+        if (payload == null) {
+            return false;
+        }
+        copy(payload, tables);
+        return true;
+    }
+
+    // Fill the given arrays from a gzip compressed table file packaged next to the classes (see TableGenerator).
+    // Same format and the same checks as the cache file. Returns false if the resource is missing or doesn't match,
+    // or if -Drubikscube.tableResources=off (TableGenerator sets that, so it never repackages an old build's tables).
+    public static boolean loadResource(String name, Object... tables) {
+        if ("off".equalsIgnoreCase(System.getProperty("rubikscube.tableResources"))) {
+            return false;
+        }
+        try (InputStream in = TableStore.class.getResourceAsStream(resourceName(name))) {
+            if (in == null) {
+                return false;
+            }
+            byte[] bytes;
+            try (GZIPInputStream gzip = new GZIPInputStream(in, 1 << 16)) {
+                bytes = gzip.readAllBytes();
+            }
+            ByteBuffer payload = validate(ByteBuffer.wrap(bytes), tables);
+            if (payload == null) {
+                return false;
+            }
+            copy(payload, tables);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    // Resource path of a table set, relative to this class. Versioned like the cache files.
+    static String resourceName(String name) {
+        return "tables/" + name + "-v" + VERSION + ".bin.gz";
+    }
+
+    // Bulk copy a validated payload into the arrays
+    static void copy(ByteBuffer payload, Object... tables) {
+        for (Object table : tables) {
+            Object array = arrayOf(table);
+            if (array instanceof byte[] bytes) {
+                payload.get(bytes);
+            } else if (array instanceof short[] shorts) {
+                payload.asShortBuffer().get(shorts);
+                payload.position(payload.position() + 2 * shorts.length);
+            } else if (array instanceof char[] chars) {
+                payload.asCharBuffer().get(chars);
+                payload.position(payload.position() + 2 * chars.length);
+            } else {
+                int[] ints = (int[]) array;
+                payload.asIntBuffer().get(ints);
+                payload.position(payload.position() + 4 * ints.length);
+            }
+        }
+    }
+
+    // Map the cache file and hand back read only views into it, one per table, in the same order.
+    // The tables passed in are only used for their shapes. Byte tables come back as ByteBuffers,
+    // short tables as ShortBuffers, char tables as CharBuffers and int tables as IntBuffers.
+    // Returns null if the file is missing, stale or corrupt.
+    public static Buffer[] map(Path file, Object... tables) {
+        ByteBuffer payload = open(file, tables);
+        if (payload == null) {
+            return null;
+        }
+        Buffer[] views = new Buffer[tables.length];
+        for (int t = 0; t < tables.length; t++) {
+            int length = lengthOf(tables[t]);
+            int kind = kindOf(tables[t]);
+            ByteBuffer bytes = payload.slice(payload.position(), length * elementBytes(kind)).order(ByteOrder.LITTLE_ENDIAN);
+            views[t] = switch (kind) {
+                case KIND_BYTES -> bytes;
+                case KIND_SHORTS -> bytes.asShortBuffer();
+                case KIND_CHARS -> bytes.asCharBuffer();
+                default -> bytes.asIntBuffer();
+            };
+            payload.position(payload.position() + length * elementBytes(kind));
+        }
+        return views;
+    }
+
+    // Map the file read only and check it. Returns the validated payload, or null.
+    // A mapping stays valid after its channel is closed, so the views handed out by map() keep working.
+    static ByteBuffer open(Path file, Object... tables) {
+        if (file == null || !Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return validate(mapped, tables);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    static ByteBuffer validate(ByteBuffer buf, Object... tables) {
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.remaining() < HEADER_BYTES + DESCRIPTOR_BYTES * tables.length) return null;
+        if (buf.getInt() != MAGIC || buf.getInt() != VERSION || buf.getInt() != tables.length) return null;
+
+        long payloadLength = buf.getLong();
+        long checksum = buf.getLong();
+
+        // The shapes have to match exactly, otherwise the file was written by a different layout
+        for (Object table : tables) {
+            if (buf.getInt() != kindOf(table) || buf.getInt() != lengthOf(table)) return null;
+        }
+        if (payloadLength != payloadBytes(tables) || buf.remaining() != payloadLength) return null;
+
+        ByteBuffer payload = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if (crc.getValue() != checksum) return null;
+        return payload;
+    }
+
+    // Write the arrays to the cache file. We write to a temp file first and then move it into place
+    // so another JVM starting at the same time never maps a half written file.
+    public static void save(Path file, Object... tables) {
+        if (file == null) {
+            return;
+        }
+        Path tmp = null;
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+
+            ByteBuffer[] encoded = encode(tables);
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (ByteBuffer part : encoded) {
+                    while (part.hasRemaining()) channel.write(part);
+                }
+                channel.force(false);
+            }
+            try {
+                // Readable by everyone so solver processes running as other users can map it too
+                Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-r--r--"));
+            } catch (UnsupportedOperationException ignored) {
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            // The cache is only an optimisation, if we can't write it we just generate again next time
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    // Write the arrays as a gzip compressed resource for loadResource, to <dir>/rubikscube/<resourceName>.
+    // Only used by the build step, so unlike save() errors are thrown instead of swallowed.
+    public static Path saveResource(Path dir, String name, Object... tables) throws IOException {
+        Path file = dir.resolve("rubikscube").resolve(resourceName(name));
+        Files.createDirectories(file.getParent());
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            for (ByteBuffer part : encode(tables)) {
+                out.write(part.array(), part.position(), part.remaining());
+            }
+        }
+        return file;
+    }
+
+    // Header and payload of a table file, ready to be written one after the other
+    static ByteBuffer[] encode(Object... tables) {
+        ByteBuffer payload = ByteBuffer.allocate((int) payloadBytes(tables)).order(ByteOrder.LITTLE_ENDIAN);
+        for (Object table : tables) {
+            Object array = arrayOf(table);
+            if (array instanceof byte[] bytes) {
+                payload.put(bytes);
+            } else if (array instanceof short[] shorts) {
+                payload.asShortBuffer().put(shorts);
+                payload.position(payload.position() + 2 * shorts.length);
+            } else if (array instanceof char[] chars) {
+                payload.asCharBuffer().put(chars);
+                payload.position(payload.position() + 2 * chars.length);
+            } else {
+                int[] ints = (int[]) array;
+                payload.asIntBuffer().put(ints);
+                payload.position(payload.position() + 4 * ints.length);
+            }
+        }
+        payload.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + DESCRIPTOR_BYTES * tables.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(tables.length);
+        header.putLong(payload.remaining()).putLong(crc.getValue());
+        for (Object table : tables) {
+            header.putInt(kindOf(table)).putInt(lengthOf(table));
+        }
+        header.flip();
+        return new ByteBuffer[] { header, payload };
+    }
+
+    // Table objects are stored through the heap array behind them, which a shared table no longer has
+    static Object arrayOf(Object table) {
+        if (table instanceof Table t) {
+            Object array = t.isBytes() ? t.bytes : t.shorts;
+            if (array == null)
+                throw new IllegalStateException("table is already shared, it has no heap array to copy");
+            return array;
+        }
+        return table;
+    }
+
+    static int kindOf(Object table) {
+        if (table instanceof Table t) return t.isBytes() ? KIND_BYTES : KIND_SHORTS;
+        if (table instanceof byte[]) return KIND_BYTES;
+        if (table instanceof short[]) return KIND_SHORTS;
+        if (table instanceof char[]) return KIND_CHARS;
+        if (table instanceof int[]) return KIND_INTS;
+        throw new IllegalArgumentException("Unsupported table type: " + table.getClass());
+    }
+
+    static int lengthOf(Object table) {
+        if (table instanceof Table t) return t.length();
+        if (table instanceof byte[] bytes) return bytes.length;
+        if (table instanceof short[] shorts) return shorts.length;
+        if (table instanceof char[] chars) return chars.length;
+        return ((int[]) table).length;
+    }
+
+    static int elementBytes(int kind) {
+        return switch (kind) {
+            case KIND_BYTES -> 1;
+            case KIND_INTS -> 4;
+            default -> 2;
+        };
+    }
+
+    static long payloadBytes(Object... tables) {
+        long total = 0;
+        for (Object table : tables) {
+            total += (long) lengthOf(table) * elementBytes(kindOf(table));
+        }
+        return total;
+    }
+}
@@ -0,0 +1,87 @@
+package rubikscube;
+
+/*
+ * Remembers, for one solve, which phase 2 start positions are known to need more than some number of moves.
+ * Lots of phase 1 paths of the same length end up on the same phase 2 position (URFtoDLF, URtoDF, FRtoBR, parity),
+ * and every time Search.totalDepth used to run the same failing phase 2 IDA* on it again.
+ *
+ * Open addressing over a long[] of keys and a byte[] of bounds, so there is no boxing and no allocation after
+ * construction. It is bounded: a key probes at most MAX_PROBES slots, and if they are all taken by other keys
+ * it just replaces the first of them. Losing an entry only costs the search it would have saved.
+ */
+
+import java.util.Arrays;
+
+public class TranspositionCache {
+
+    static final int MAX_PROBES = 8;
+    private static final long EMPTY = -1;
+
+    private final long[] keys;
+    private final byte[] bounds;
+    private final int shift;
+    private int size;
+
+    // capacity must be a power of two
+    public TranspositionCache(int capacity) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("capacity must be a power of two");
+        keys = new long[capacity];
+        bounds = new byte[capacity];
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        Arrays.fill(keys, EMPTY);
+    }
+
+    // The phase 2 position as one key, every part is below its phase 2 range
+    static long key(int URFtoDLF, int URtoDF, int FRtoBR, int parity) {
+        return (((long) URFtoDLF * CoordCube.NUM_EDGE_PERMUTATIONS_PHASE2 + URtoDF)
+                * CoordCube.NUM_SLICE_PERMUTATIONS_PHASE2 + FRtoBR) * CoordCube.NUM_PARITIES + parity;
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    // The proven lower bound on the phase 2 distance of key, 0 if nothing is known
+    public int lowerBound(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key), probe = 0; probe < MAX_PROBES; i = (i + 1) & mask, probe++) {
+            if (keys[i] == key)
+                return bounds[i];
+            if (keys[i] == EMPTY)
+                return 0;
+        }
+        return 0;
+    }
+
+    // key needs at least bound moves (keeps the higher bound if there already is one)
+    public void record(long key, int bound) {
+        int mask = keys.length - 1;
+        int home = slot(key);
+        for (int i = home, probe = 0; probe < MAX_PROBES; i = (i + 1) & mask, probe++) {
+            if (keys[i] == key) {
+                bounds[i] = (byte) Math.max(bounds[i], bound);
+                return;
+            }
+            if (keys[i] == EMPTY) {
+                keys[i] = key;
+                bounds[i] = (byte) bound;
+                size++;
+                return;
+            }
+        }
+        keys[home] = key;
+        bounds[home] = (byte) bound;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,39 @@
+#!/bin/bash
+
+# Compares end to end startup + solve time of one Solver run (run it from src/, after ./package_runtime.sh):
+#   classpath: plain java -cp on freshly compiled classes, the tables are generated at class init
+#   jar:       plain java with rubikscube.jar, the tables come from the jar resources
+#   runtime:   the jlink runtime + AppCDS archive from package_runtime.sh
+# Every run uses -Drubikscube.tableCache=off so it behaves like a fresh container without a cache directory.
+#
+# Usage: ./startup_benchmark.sh [build dir] [runs]     (default ../build, 10 runs)
+
+build=${1:-../build}
+runs=${2:-10}
+
+if [ ! -x "$build/solve" ]; then
+    echo "No runtime in $build, run ./package_runtime.sh first"
+    exit 1
+fi
+
+# The plain classpath variant must not see the packaged tables, so it gets its own classes directory
+mkdir -p "$build/plain"
+javac -d "$build/plain" rubikscube/*.java
+java -cp "$build/plain" rubikscube.Benchmark scramble "$build/startup.txt" 2
+
+run() {
+    local name=$1
+    shift
+    local total=0
+    for ((i = 0; i < runs; i++)); do
+        start_time=$(date +%s%N)
+        "$@" "$build/startup.txt" "$build/startup_solution.txt"
+        end_time=$(date +%s%N)
+        total=$((total + end_time - start_time))
+    done
+    echo -e "\033[0;32m$name: $((total / runs / 1000000)) ms per run\033[0m"
+}
+
+run "classpath" java -Drubikscube.tableCache=off -cp "$build/plain" rubikscube.Solver
+run "jar      " java -Drubikscube.tableCache=off -cp "$build/rubikscube.jar" rubikscube.Solver
+run "runtime  " env JAVA_OPTS=-Drubikscube.tableCache=off "$build/solve"